@@ -0,0 +1,83 @@
+import recipeInfo.Recipe;
+import recipeInfo.index.RecipeColumns;
+import recipeInfo.recipeContents.InfoBlock;
+import recipeInfo.recipeContents.Method;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Compares filtering recipes by serves and time through the column store with filtering the recipe objects the
+ * way getRecipesWhere used to, with a stream pass for each qualifier, on a million made up recipes.
+ * Also measures the heap held by the info the filter reads: the InfoBlocks with their Durations against the
+ * RecipeColumns arrays. Heap use is measured after asking for a collection, so it's approximate. The first rounds
+ * warm up the JIT. Needs a heap of about a gigabyte.
+ * Run with: java ColumnScanBenchmark [number of recipes]
+ */
+public class ColumnScanBenchmark {
+	private static final int ROUNDS = 10;
+	private static final int SERVES = 4;
+	private static final Duration MAX_TIME = Duration.ofMinutes(90);
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		SplittableRandom random = new SplittableRandom(5);
+
+		long before = usedHeap();
+		List<InfoBlock> infos = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) { infos.add(SyntheticRecipes.info(random)); }
+		long objects = usedHeap() - before;
+		RecipeColumns columns = new RecipeColumns().append(infos);
+		infos = null;
+		long columnar = usedHeap() - before;
+		System.out.printf("%d recipes: info objects %.1f MB (%.0f bytes each), columns %.1f MB (%.0f bytes each)%n",
+				columns.size(), objects / 1e6, (double) objects / count, columnar / 1e6, (double) columnar / count);
+		columns = null;
+
+		//only the info is filtered on, so the recipes are left empty to fit a million in the heap
+		List<Recipe> recipes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			recipes.add(new Recipe(new ArrayList<>(), new Method(new ArrayList<>()), "Recipe " + i, SyntheticRecipes.info(random), new ArrayList<>()));
+		}
+		RecipeBook book = new RecipeBook();
+		book.addRecipes(recipes);
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			usedHeap(); //so neither filter is timed with a collection left over from the other
+			long start = System.nanoTime();
+			int streamed = streamRecipesWhere(recipes).size();
+			long streaming = System.nanoTime() - start;
+
+			usedHeap();
+			start = System.nanoTime();
+			int scanned = book.getRecipesWhere(SERVES, MAX_TIME, List.of()).size();
+			long scanning = System.nanoTime() - start;
+			if (streamed != scanned) { throw new IllegalStateException("Streams found " + streamed + " recipes but columns found " + scanned); }
+
+			System.out.printf("round %d: %d of %d match, streams %.1f ms, columns %.1f ms, %.1fx%n",
+					round, scanned, count, streaming / 1e6, scanning / 1e6, (double) streaming / scanning);
+		}
+	}
+
+	/**
+	 * Filter the recipes the way getRecipesWhere did before the column store.
+	 */
+	private static List<Recipe> streamRecipesWhere(List<Recipe> recipes) {
+		List<Recipe> potentialRecipes = new ArrayList<>(recipes);
+		potentialRecipes = potentialRecipes.stream().filter(s -> s.getInfo().getServes() == SERVES).collect(Collectors.toList());
+		potentialRecipes = potentialRecipes.stream().filter(s -> s.getTotTime().toMinutes() <= MAX_TIME.toMinutes()).collect(Collectors.toList());
+		return potentialRecipes.stream().filter(s -> s.getTags().containsAll(List.of())).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return  bytes of heap in use after asking for a collection
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) { System.gc(); }
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
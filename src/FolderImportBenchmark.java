@@ -0,0 +1,75 @@
+import recipeInfo.RecipeHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Times importing a folder of recipe files into an empty book the way the GUI does, parsing headers with a
+ * RecipeImporter and merging them with a duplicate check on every name, for folders of doubling size.
+ * The time per recipe stays flat as the folder grows, where a linear duplicate check made it grow with the book.
+ * Made up recipe files are written to a temporary folder, which is deleted afterwards. The sizes are run twice and
+ * the first pass warms up the JIT and the file cache.
+ * Run with: java FolderImportBenchmark [largest number of recipes]
+ */
+public class FolderImportBenchmark {
+	private static final int BATCH = 500; //about what the import batcher gathers between repaints
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int largest = args.length > 0 ? Integer.parseInt(args[0]) : 80_000;
+		Path folder = Files.createTempDirectory("recipes");
+		List<File> files = new ArrayList<>(largest);
+		try {
+			SyntheticRecipes.recipes(largest, 3).forEach(r -> {
+				File file = folder.resolve(r.getName() + ".txt").toFile();
+				try {
+					Files.write(file.toPath(), r.toFileFormat().getBytes(StandardCharsets.UTF_8));
+				} catch (IOException e) {
+					throw new IllegalStateException("Can't write " + file, e);
+				}
+				files.add(file);
+			});
+			for (int pass = 1; pass <= 2; pass++) {
+				for (int n = largest / 8; n <= largest; n *= 2) {
+					importFolder(pass, files.subList(0, n));
+				}
+			}
+		} finally {
+			for (File file : files) { Files.deleteIfExists(file.toPath()); }
+			Files.deleteIfExists(folder);
+		}
+	}
+
+	/**
+	 * Import the files into a new book and print how long parsing and merging took.
+	 */
+	private static void importFolder(int pass, List<File> files) throws InterruptedException {
+		List<RecipeHeader> parsed = Collections.synchronizedList(new ArrayList<>(files.size()));
+		long start = System.nanoTime();
+		RecipeImporter.Result result = new RecipeImporter(true).importFiles(files, finished -> {}, (r, source) -> parsed.add(r));
+		long parsing = System.nanoTime() - start;
+		if (!result.getFailures().isEmpty()) { throw new IllegalStateException(result.getFailures().size() + " files failed to import"); }
+
+		start = System.nanoTime();
+		RecipeBook book = new RecipeBook();
+		for (int from = 0; from < parsed.size(); from += BATCH) {
+			List<RecipeHeader> fresh = new ArrayList<>();
+			HashSet<String> names = new HashSet<>();
+			for (RecipeHeader r : parsed.subList(from, Math.min(from + BATCH, parsed.size()))) {
+				if (!book.checkForDuplicate(r.getName()) && names.add(r.getName())) { fresh.add(r); }
+			}
+			book.addHeaders(fresh);
+		}
+		long merging = System.nanoTime() - start;
+		if (book.size() != files.size()) { throw new IllegalStateException("Only " + book.size() + " of " + files.size() + " recipes were added"); }
+
+		System.out.printf("pass %d, %6d recipes: parse %7.1f ms, merge %6.1f ms, %.2f us a recipe%n", pass, files.size(),
+				parsing / 1e6, merging / 1e6, (parsing + merging) / 1e3 / files.size());
+	}
+}
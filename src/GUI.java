@@ -1,8 +1,12 @@
 
 import recipeInfo.Recipe;
+import recipeInfo.RecipeHeader;
+import recipeInfo.index.IngredientIndex;
 import recipeInfo.recipeContents.*;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
@@ -10,7 +14,6 @@ import java.io.FileNotFoundException;
 import java.time.Duration;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -21,9 +24,11 @@ public abstract class GUI {
 
 	protected abstract RecipeBook getRecipes();
 	protected abstract void saveRecipe(Recipe r);
+	protected abstract void saveRecipes(List<RecipeHeader> r);
 	protected abstract void loadTags(ArrayList<String> tags);
-	protected abstract HashSet<String> getSuggestedTags(String tag);
-	protected abstract HashSet<String> getAllTags();
+	protected abstract List<String> getSuggestedTags(String tag);
+	protected abstract Set<String> getAllTags();
+	protected abstract void setSource(String name, RecipeSnapshot.Source source);
 
 	private static final int START_WINDOW_BUTTON_TEXT_SIZE = 30;
 	private static final int START_WINDOW_TITLE_TEXT_SIZE = 60;
@@ -31,6 +36,7 @@ public abstract class GUI {
 	private static final int RECIPE_LIST_TEXT_SIZE = 15;
 	private static final int RECIPE_FORM_TEXT_SIZE = 15;
 	private static final int RECIPE_FORM_COMPONENT_TEXT_SIZE = 15;
+	private static final int SEARCH_RESULTS = 50;
 
 	private final Dimension startWindowButtonSize = new Dimension(100, 60);
 	private final Dimension startWindowMinimumSize = new Dimension(800, 500);
@@ -54,15 +60,18 @@ public abstract class GUI {
 	private final Color pressedButCol = new Color(5, 78, 34);
 
 	private JFrame startWindow;
+	private Button start;
 	private JFrame mainWindow;
 	private JFrame recipeFormWindow;
 
+	private final TagSuggester tagSuggester = new TagSuggester(this::getSuggestedTags, 150);
+
 	volatile Step[] stepsCollection;
 	volatile Ingredient[] ingredientsCollection;
 	volatile String[] tagsCollection;
-	volatile String[] generatedRecipesCollection;
 
 	JList<String> recipes;
+	private RecipeListModel recipesModel;
 
 	public GUI() {
 		buildStartWindow();
@@ -73,13 +82,17 @@ public abstract class GUI {
 	 * Contains a title label with the name of the program, a start button,
 	 * which when clicked runs the method to open the main window (and close
 	 * this start window), and a quit button, which closes the program.
+	 * The start button stays disabled until finishLoading is called, so nothing can change the book while the
+	 * recipes saved by the last run are restored.
 	 * Window is built with a JFrame using GridBag layout
 	 */
 	private void buildStartWindow() {
 		//create and format the start button
-		Button start = new Button("Start");
+		start = new Button("Start");
 		start.setPreferredSize(startWindowButtonSize);
 		start.setFont(startWindowButtonFont);
+		start.setEnabled(false);
+		start.setToolTipText("Loading your recipes.");
 		start.addActionListener(e -> buildMainWindow());
 
 		//create and format the quit button
@@ -134,6 +147,17 @@ public abstract class GUI {
 		startWindow.setVisible(true); //so we can see the gui
 	}
 
+	/**
+	 * Let the user into the main window, once the recipes saved by the last run have been restored.
+	 * Can be called from any thread.
+	 */
+	protected void finishLoading() {
+		SwingUtilities.invokeLater(() -> {
+			start.setEnabled(true);
+			start.setToolTipText(null);
+		});
+	}
+
 	/**
 	 * The main window hosts majority of the functionality of the program.
 	 * It includes 2 panels, the first of which containing 6 buttons:
@@ -213,20 +237,28 @@ public abstract class GUI {
 		JPanel recipePanel = new JPanel();
 		recipePanel.setLayout(new BorderLayout());
 
-		recipes = new JList<>();
-		recipes.setListData(getRecipes().namesToArray()); //add all of the name of recipes in recipeBook to the list
+		recipesModel = new RecipeListModel(getRecipes()); //shows the names of the recipes in recipeBook
+		recipes = new JList<>(recipesModel);
 		recipes.setLayoutOrientation(JList.VERTICAL);
 		recipes.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 		recipes.setFont(new Font("Helvetica", Font.PLAIN, RECIPE_LIST_TEXT_SIZE));
+		//give every row the same size, so the list never measures every name when rows are added
+		recipes.setPrototypeCellValue("X");
+		recipes.setFixedCellWidth(recipeListPreferredSize.width);
 
 		JScrollPane recipeScroll = new JScrollPane(recipes);
 		recipeScroll.createVerticalScrollBar();
 		recipeScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED); //only show scroll when necessary
 		recipeScroll.setPreferredSize(recipeListPreferredSize);
 
+		JTextField recipeSearch = new JTextField();
+		recipeSearch.setFont(new Font("Helvetica", Font.PLAIN, RECIPE_LIST_TEXT_SIZE));
+		recipeSearch.setToolTipText("Filter recipes by name, or press enter to search their ingredients and methods too");
+
 		Button openRecipeButton = new Button("Open Recipe");
 		setFormComponentDetails(openRecipeButton);
 
+		recipePanel.add(recipeSearch, BorderLayout.NORTH);
 		recipePanel.add(recipeScroll, BorderLayout.CENTER);
 		recipePanel.add(openRecipeButton, BorderLayout.SOUTH);
 
@@ -248,18 +280,21 @@ public abstract class GUI {
 			if (fileChooser.showOpenDialog(mainWindow) == JFileChooser.APPROVE_OPTION) { //if the user chose an
 				//acceptable file
 				File file = fileChooser.getSelectedFile();
-				loadRecipe(file);
+				if (RecipeBundleReader.isBundle(file)) {
+					importRecipes(List.of(file), () -> { }); //bundles can hold any number of recipes
+				} else {
+					loadRecipe(file);
+				}
 			}
 		});
 
 		loadFolder.addActionListener(e -> {
 			File folder =  new File("./Recipes/");
-			File[] listOfFiles = folder.listFiles();
+			File[] listOfFiles = folder.listFiles(File::isFile);
 
-			if (listOfFiles == null) { return; }
-			for (File f : listOfFiles) {
-				loadRecipe(f);
-			}
+			if (listOfFiles == null || listOfFiles.length == 0) { return; }
+			loadFolder.setEnabled(false); //only one import at a time
+			importRecipes(Arrays.asList(listOfFiles), () -> loadFolder.setEnabled(true));
 		});
 
 		//open the form to create recipe file
@@ -271,14 +306,143 @@ public abstract class GUI {
 		//close program
 		quit.addActionListener(e -> System.exit(0));
 
+		//filter the list on every keystroke
+		recipeSearch.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) { recipesModel.setFilter(recipeSearch.getText()); }
+			@Override
+			public void removeUpdate(DocumentEvent e) { recipesModel.setFilter(recipeSearch.getText()); }
+			@Override
+			public void changedUpdate(DocumentEvent e) { }
+		});
+
+		//search the full text of every recipe
+		recipeSearch.addActionListener(e -> {
+			String query = recipeSearch.getText().trim();
+			if (!query.isEmpty()) { buildSearchResultsWindow(query, getRecipes().searchText(query, SEARCH_RESULTS)); }
+		});
+
 		openRecipeButton.addActionListener(e -> {
 			if (recipes.getSelectedIndex() != -1) {
-				buildRecipeDisplayWindow(getRecipes().getRecipeAt(recipes.getSelectedIndex()));
+				buildRecipeDisplayWindow(getRecipes().getRecipeAt(recipesModel.getOrdinalAt(recipes.getSelectedIndex())));
 			}
 		});
 
 	}
 
+	/**
+	 * Parse a set of files in the background, showing a window with the progress and a cancel button.
+	 * Recipes are added to the book and the list as they are parsed, in a batch at most once a frame, and once
+	 * every file is done any files which couldn't be parsed are reported together, so nothing stops for input.
+	 * Recipes already added stay if the import is cancelled.
+	 * @param files Files to import
+	 * @param onFinish  Run on the event thread once the import has finished or been cancelled
+	 */
+	private void importRecipes(List<File> files, Runnable onFinish) {
+		JFrame progressWindow = new JFrame("Loading Recipes");
+		JProgressBar progressBar = new JProgressBar(0, files.size());
+		progressBar.setStringPainted(true);
+		progressBar.setString("0 / " + files.size());
+		setFormComponentDetails(progressBar);
+		Button cancelButton = new Button("Cancel");
+		setFormComponentDetails(cancelButton);
+
+		JPanel mainPanel = new JPanel();
+		mainPanel.setBackground(bgCol);
+		mainPanel.setLayout(new BoxLayout(mainPanel, BoxLayout.Y_AXIS));
+		mainPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+		progressBar.setAlignmentX(Component.CENTER_ALIGNMENT);
+		cancelButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+		mainPanel.add(progressBar);
+		mainPanel.add(Box.createRigidArea(new Dimension(5, 15)));
+		mainPanel.add(cancelButton);
+		progressWindow.add(mainPanel);
+		progressWindow.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); //cancel button should be used instead
+		progressWindow.pack();
+		progressWindow.setLocationRelativeTo(mainWindow);
+		progressWindow.setVisible(true);
+
+		ImportBatcher batcher = new ImportBatcher(this::mergeRecipes);
+		SwingWorker<RecipeImporter.Result, Integer> worker = new SwingWorker<>() {
+			@Override
+			protected RecipeImporter.Result doInBackground() throws Exception {
+				//only headers are needed to list and filter the recipes, their contents are indexed in the background
+				return new RecipeImporter(true).importFiles(files, this::publish, batcher::add);
+			}
+
+			@Override
+			protected void process(List<Integer> chunks) {
+				int finished = chunks.get(chunks.size() - 1); //only the latest count matters
+				progressBar.setValue(finished);
+				progressBar.setString(finished + " / " + files.size());
+			}
+
+			@Override
+			protected void done() {
+				batcher.close();
+				progressWindow.dispose();
+				onFinish.run();
+				if (isCancelled()) { return; }
+				try {
+					RecipeImporter.Result result = get();
+					if (!result.getFailures().isEmpty()) { showImportFailures(result.getFailures()); }
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+		};
+		cancelButton.addActionListener(e -> worker.cancel(true));
+		batcher.start();
+		worker.execute();
+	}
+
+	/**
+	 * Add every recipe which isn't already in the book, along with its tags, then refresh the list once.
+	 * @param loaded    Recipes to add, which may be just their headers
+	 * @param sources   File each recipe was read from
+	 */
+	private void mergeRecipes(List<RecipeHeader> loaded, List<RecipeSnapshot.Source> sources) {
+		List<RecipeHeader> fresh = new ArrayList<>();
+		HashSet<String> names = new HashSet<>();
+		for (int i = 0; i < loaded.size(); i++) {
+			RecipeHeader r = loaded.get(i);
+			if (getRecipes().checkForDuplicate(r.getName()) || !names.add(r.getName())) { continue; }
+			fresh.add(r);
+			setSource(r.getName(), sources.get(i));
+		}
+		if (fresh.isEmpty()) { return; }
+		saveRecipes(fresh);
+		fresh.forEach(r -> loadTags(r.getTags()));
+		refreshRecipeList();
+		selectRecipe(getRecipes().size() - 1); //the last one merged
+	}
+
+	/**
+	 * Show a single dialog listing every file which failed to import.
+	 * @param failures  Message for each failed file
+	 */
+	private void showImportFailures(Map<File, String> failures) {
+		StringBuilder b = new StringBuilder();
+		b.append(failures.size()).append(" file(s) could not be loaded: \n");
+		failures.forEach((f, message) -> b.append(f.getName()).append(": ").append(message).append("\n"));
+		JTextArea failuresText = new JTextArea(b.toString());
+		failuresText.setEditable(false);
+		setFormComponentDetails(failuresText);
+		JScrollPane failuresScroll = new JScrollPane(failuresText);
+		failuresScroll.setPreferredSize(new Dimension(400, 200));
+
+		JOptionPane parseError = new JOptionPane();
+		parseError.setOptionType(JOptionPane.DEFAULT_OPTION);
+		parseError.setMessage(failuresScroll);
+		JDialog parseErrorDialog = parseError.createDialog("Recipe Parse Error");
+		parseErrorDialog.pack();
+		parseErrorDialog.setVisible(true);
+		int dialogChoice = (Integer) parseError.getValue();
+		if (dialogChoice == JOptionPane.OK_OPTION) {
+			parseErrorDialog.setVisible(false);
+		}
+	}
+
 	/**
 	 * Build window to display a recipe.
 	 * @param r Recipe to display.
@@ -320,6 +484,44 @@ public abstract class GUI {
 		recipeWindow.setVisible(true);
 	}
 
+	/**
+	 * Build window listing the recipes found by a full text search, best match first.
+	 * @param query Query searched for
+	 * @param found Names of the recipes found
+	 */
+	private void buildSearchResultsWindow(String query, List<String> found) {
+		JFrame resultsWindow = new JFrame("Recipes matching \"" + query + "\"");
+
+		JList<String> results = new JList<>(found.isEmpty() ? new String[] {"No recipes found"} : found.toArray(new String[0]));
+		results.setEnabled(!found.isEmpty());
+		results.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		results.setFont(new Font("Helvetica", Font.PLAIN, RECIPE_LIST_TEXT_SIZE));
+
+		JScrollPane resultsScroll = new JScrollPane(results);
+		resultsScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+		resultsScroll.setPreferredSize(new Dimension(recipeListPreferredSize.width, recipeListPreferredSize.height / 2));
+
+		Button viewButton = new Button("View Recipe");
+		setFormComponentDetails(viewButton);
+
+		JPanel mainPanel = new JPanel();
+		mainPanel.setLayout(new BorderLayout());
+		mainPanel.add(resultsScroll, BorderLayout.CENTER);
+		mainPanel.add(viewButton, BorderLayout.SOUTH);
+
+		resultsWindow.add(mainPanel);
+		resultsWindow.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		resultsWindow.pack();
+		resultsWindow.setLocationRelativeTo(mainWindow);
+		resultsWindow.setVisible(true);
+
+		viewButton.addActionListener(e -> {
+			if (results.getSelectedIndex() == -1 || found.isEmpty()) { return; }
+			Recipe r = getRecipes().getRecipeByName(results.getSelectedValue());
+			if (r != null) { buildRecipeDisplayWindow(r); } //it may have been removed since the search
+		});
+	}
+
 	/**
 	 *  Builds the window where user can randomly get recipes from the registered ones based on specifications, and
 	 *  perform actions with those recipes.
@@ -358,9 +560,37 @@ public abstract class GUI {
 		timeOptions.add(maxMinutesSpinner);
 		timeOptions.add(Box.createHorizontalGlue());
 
-		Button generateButton = new Button("Generate a Recipe!");
+		JSpinner countSpinner = new JSpinner();
+		countSpinner.setToolTipText("How many different recipes should be generated?");
+		countSpinner.setMaximumSize(new Dimension(50, 20));
+		countSpinner.setModel(new SpinnerNumberModel(1, 1, 31, 1));
+		setFormComponentDetails(countSpinner);
+		JPanel countPadding = new JPanel();
+		countPadding.setLayout(new BoxLayout(countPadding, BoxLayout.X_AXIS));
+		countPadding.add(Box.createHorizontalGlue());
+		countPadding.add(countSpinner);
+		countPadding.add(Box.createHorizontalGlue());
+
+		Button generateButton = new Button("Generate Recipes!");
 		setFormComponentDetails(generateButton);
 
+		//a plan is built up a few meals at a time, so each meal can have its own specifications
+		List<RecipeBook.MealSlot> plan = new ArrayList<>();
+		JLabel planLabel = setFormLabelDetails(new JLabel("Meals Planned: 0"));
+		Button addToPlanButton = new Button("Add To Plan");
+		addToPlanButton.setToolTipText("Add that many meals with these specifications to the plan");
+		setFormComponentDetails(addToPlanButton);
+		Button planButton = new Button("Plan Meals!");
+		planButton.setToolTipText("Pick a different recipe for every meal in the plan");
+		setFormComponentDetails(planButton);
+		JPanel planButtons = new JPanel();
+		planButtons.setLayout(new BoxLayout(planButtons, BoxLayout.X_AXIS));
+		planButtons.add(Box.createHorizontalGlue());
+		planButtons.add(addToPlanButton);
+		planButtons.add(Box.createRigidArea(new Dimension(5, 10)));
+		planButtons.add(planButton);
+		planButtons.add(Box.createHorizontalGlue());
+
 		specificOptions.add(setFormLabelDetails(new JLabel("Number of Serves (0 for any)")));
 		specificOptions.add(Box.createRigidArea(new Dimension(5,15)));
 		specificOptions.add(servesPadding);
@@ -369,18 +599,54 @@ public abstract class GUI {
 		specificOptions.add(Box.createRigidArea(new Dimension(5,15)));
 		specificOptions.add(timeOptions);
 		specificOptions.add(Box.createRigidArea(new Dimension(5,15)));
+		specificOptions.add(setFormLabelDetails(new JLabel("How Many Recipes")));
+		specificOptions.add(Box.createRigidArea(new Dimension(5,15)));
+		specificOptions.add(countPadding);
+		specificOptions.add(Box.createRigidArea(new Dimension(5,15)));
 		specificOptions.add(generateButton);
+		specificOptions.add(Box.createRigidArea(new Dimension(5,15)));
+		specificOptions.add(planLabel);
+		specificOptions.add(Box.createRigidArea(new Dimension(5,5)));
+		specificOptions.add(planButtons);
+
+		JPanel pantryOptions = new JPanel();
+		pantryOptions.setLayout(new BoxLayout(pantryOptions, BoxLayout.Y_AXIS));
+		JTextField pantryInput = new JTextField();
+		pantryInput.setToolTipText("Which ingredients do you have? Separate them with commas.");
+		pantryInput.setMaximumSize(new Dimension(200, 30));
+		setFormComponentDetails(pantryInput);
+		JSpinner maxMissingSpinner = new JSpinner();
+		maxMissingSpinner.setToolTipText("How many ingredients can a recipe need which you don't have?");
+		maxMissingSpinner.setMaximumSize(new Dimension(50, 20));
+		maxMissingSpinner.setModel(new SpinnerNumberModel(0, 0, 10, 1));
+		setFormComponentDetails(maxMissingSpinner);
+		JPanel missingPadding = new JPanel();
+		missingPadding.setLayout(new BoxLayout(missingPadding, BoxLayout.X_AXIS));
+		missingPadding.add(Box.createHorizontalGlue());
+		missingPadding.add(maxMissingSpinner);
+		missingPadding.add(Box.createHorizontalGlue());
+		Button cookButton = new Button("What Can I Cook?");
+		setFormComponentDetails(cookButton);
+
+		pantryOptions.add(setFormLabelDetails(new JLabel("Ingredients I Have")));
+		pantryOptions.add(Box.createRigidArea(new Dimension(5,15)));
+		pantryOptions.add(pantryInput);
+		pantryOptions.add(Box.createRigidArea(new Dimension(5,15)));
+		pantryOptions.add(setFormLabelDetails(new JLabel("Missing At Most")));
+		pantryOptions.add(Box.createRigidArea(new Dimension(5,15)));
+		pantryOptions.add(missingPadding);
+		pantryOptions.add(Box.createRigidArea(new Dimension(5,15)));
+		pantryOptions.add(cookButton);
 
 		JPanel tagOptions = new JPanel();
 		tagOptions.setLayout(new BoxLayout(tagOptions, BoxLayout.Y_AXIS));
 		JList<String> tagsList = new JList<>();
 		tagsList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
-		if (getAllTags().size() > 0) {
-			HashSet<String> tags = getAllTags();
-			String[] tagsListCollection = new String[tags.size() + 1];
+		String[] knownTags = getAllTags().toArray(new String[0]); //copy once, tags may be added while we read
+		if (knownTags.length > 0) {
+			String[] tagsListCollection = new String[knownTags.length + 1];
 			tagsListCollection[0] = "None";
-			AtomicInteger i = new AtomicInteger(1);
-			tags.forEach(s -> tagsListCollection[i.getAndIncrement()] = s);
+			System.arraycopy(knownTags, 0, tagsListCollection, 1, knownTags.length);
 			tagsList.setListData(tagsListCollection);
 		}
 		JScrollPane tagsScroll = new JScrollPane(tagsList);
@@ -392,6 +658,8 @@ public abstract class GUI {
 		generationOptions.add(Box.createRigidArea(new Dimension(20, 5)));
 		generationOptions.add(specificOptions);
 		generationOptions.add(Box.createRigidArea(new Dimension(10, 5)));
+		generationOptions.add(pantryOptions);
+		generationOptions.add(Box.createRigidArea(new Dimension(10, 5)));
 		generationOptions.add(Box.createHorizontalGlue());
 		generationOptions.add(tagOptions);
 		generationOptions.add(Box.createRigidArea(new Dimension(20, 5)));
@@ -401,9 +669,8 @@ public abstract class GUI {
 
 		JPanel listPadding = new JPanel();
 		listPadding.setLayout(new BoxLayout(listPadding, BoxLayout.X_AXIS));
-		JList<String> generatedRecipesList = new JList<>();
-		generatedRecipesCollection = new String[5];
-		generatedRecipesList.setListData(generatedRecipesCollection);
+		DefaultListModel<String> generatedRecipesModel = new DefaultListModel<>();
+		JList<String> generatedRecipesList = new JList<>(generatedRecipesModel);
 		JScrollPane generatedRecipesScroll = new JScrollPane(generatedRecipesList);
 		generatedRecipesScroll.setPreferredSize(new Dimension(100, 200));
 		listPadding.add(Box.createRigidArea(new Dimension(20, 5)));
@@ -459,8 +726,10 @@ public abstract class GUI {
 			Duration max = Duration.ofHours((int) maxHoursSpinner.getValue()).plus(Duration.ofMinutes((int) maxMinutesSpinner.getValue()));
 			int numServes = (int)numServesSpinner.getValue();
 			List<String> tags = tagsList.getSelectedValuesList();
-			String r = getRecipes().getRecipeWhere(numServes, max, tags);
-			if (r == null) {
+			//pick every recipe asked for in one go, skipping ones which are already in the list
+			List<String> picked = getRecipes().getDistinctRecipesWhere((int) countSpinner.getValue(), numServes, max, tags,
+					Collections.list(generatedRecipesModel.elements()), new SplittableRandom());
+			if (picked.isEmpty()) {
 				JOptionPane noRecipe = new JOptionPane();
 				noRecipe.setOptionType(JOptionPane.DEFAULT_OPTION);
 				noRecipe.setMessage("No recipe exists with those specifications..!");
@@ -473,22 +742,46 @@ public abstract class GUI {
 				}
 			}
 			 else {
-				if (generatedRecipesCollection[generatedRecipesCollection.length - 1] != null) {
-					//make list bigger
-					String[] temp = new String[generatedRecipesCollection.length + 5];
-					for (int i = 0; i < generatedRecipesCollection.length; i++) {
-						temp[i] = generatedRecipesCollection[i];
-					}
-					generatedRecipesCollection = temp;
-				}
-				for (int i = 0; i < generatedRecipesCollection.length; i++) {
-					if (generatedRecipesCollection[i] != null) {
-						continue;
-					}
-					generatedRecipesCollection[i] = r;
-					generatedRecipesList.setListData(generatedRecipesCollection);
-					break;
-				}
+				generatedRecipesModel.addAll(picked);
+			}
+		});
+
+		addToPlanButton.addActionListener(e -> {
+			Duration max = Duration.ofHours((int) maxHoursSpinner.getValue()).plus(Duration.ofMinutes((int) maxMinutesSpinner.getValue()));
+			RecipeBook.MealSlot slot = new RecipeBook.MealSlot((int) numServesSpinner.getValue(), max, tagsList.getSelectedValuesList());
+			plan.addAll(Collections.nCopies((int) countSpinner.getValue(), slot));
+			planLabel.setText("Meals Planned: " + plan.size());
+		});
+
+		//fill every meal of the plan at once, so no recipe is used twice and picky meals aren't left without one
+		planButton.addActionListener(e -> {
+			if (plan.isEmpty()) { return; }
+			String[] planned = getRecipes().planMeals(plan, Collections.list(generatedRecipesModel.elements()), new SplittableRandom());
+			int unfilled = 0;
+			for (String name : planned) {
+				if (name == null) { unfilled++; }
+				else { generatedRecipesModel.addElement(name); }
+			}
+			plan.clear();
+			planLabel.setText("Meals Planned: 0");
+			if (unfilled > 0) {
+				JOptionPane.showMessageDialog(generationWindow, "No recipe was left for " + unfilled + " of the meals planned..!", "Not Enough Recipes!", JOptionPane.INFORMATION_MESSAGE);
+			}
+		});
+
+		//add the recipes which best use the ingredients given, skipping ones which are already in the list
+		cookButton.addActionListener(e -> {
+			List<String> pantry = Arrays.stream(pantryInput.getText().split(","))
+					.map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+			if (pantry.isEmpty()) { return; }
+			List<String> shown = Collections.list(generatedRecipesModel.elements());
+			List<String> cookable = getRecipes().canCook(pantry, (int) maxMissingSpinner.getValue(), (int) countSpinner.getValue() + shown.size())
+					.stream().map(IngredientIndex.Match::getKey).filter(name -> !shown.contains(name))
+					.limit((int) countSpinner.getValue()).collect(Collectors.toList());
+			if (cookable.isEmpty()) {
+				JOptionPane.showMessageDialog(generationWindow, "No recipe can be made with those ingredients..!", "No Recipe Found!", JOptionPane.INFORMATION_MESSAGE);
+			} else {
+				generatedRecipesModel.addAll(cookable);
 			}
 		});
 
@@ -498,14 +791,10 @@ public abstract class GUI {
 
 		removeButton.addActionListener(e -> {
 			if (generatedRecipesList.getSelectedIndex() != -1) {
-				for (int i = generatedRecipesList.getSelectedIndex(); i < generatedRecipesCollection.length - 1; i++) {
-					generatedRecipesCollection[i] = generatedRecipesCollection[i+1];
-				}
-				generatedRecipesCollection[generatedRecipesCollection.length - 1] = null;
-				generatedRecipesList.setListData(generatedRecipesCollection);
+				generatedRecipesModel.remove(generatedRecipesList.getSelectedIndex());
 			}
 		});
-		shoppingListButton.addActionListener(e -> buildShoppingListWindow(Arrays.stream(generatedRecipesCollection).filter(Objects::nonNull).map(s -> GUI.this.getRecipes().getRecipeByName(s)).collect(Collectors.toList())));
+		shoppingListButton.addActionListener(e -> buildShoppingListWindow(Collections.list(generatedRecipesModel.elements()).stream().map(s -> GUI.this.getRecipes().getRecipeByName(s)).collect(Collectors.toList())));
 	}
 
 
@@ -965,18 +1254,38 @@ public abstract class GUI {
 			}
 		});
 
-		tagEditor.addKeyListener(new KeyListener() {
+		boolean[] showingSuggestions = {false}; //set while the combo box rewrites the editor with a new model
+		tagEditor.getDocument().addDocumentListener(new DocumentListener() {
 			@Override
-			public void keyTyped(KeyEvent e) { }
-			@Override public void keyPressed(KeyEvent e) { String text = tagEditor.getText();
-			if (!text.equals("")) {
-				DefaultComboBoxModel<String> m = new DefaultComboBoxModel<>();
-				HashSet<String> suggestions = getSuggestedTags(text);
-				m.addElement(text);
-				if (suggestions != null) { m.addAll(suggestions); }
-				tagsComboBox.setModel(m);
-				tagsComboBox.showPopup();}}
-			@Override public void keyReleased(KeyEvent e) { }
+			public void insertUpdate(DocumentEvent e) { textChanged(); }
+			@Override
+			public void removeUpdate(DocumentEvent e) { textChanged(); }
+			@Override
+			public void changedUpdate(DocumentEvent e) { }
+
+			private void textChanged() {
+				if (showingSuggestions[0]) { return; }
+				String text = tagEditor.getText();
+				if (text.equals("")) {
+					tagSuggester.cancel();
+					return;
+				}
+				tagSuggester.request(text, suggestions -> {
+					if (!tagEditor.getText().equals(text)) { return; }
+					DefaultComboBoxModel<String> m = new DefaultComboBoxModel<>();
+					m.addElement(text);
+					m.addAll(suggestions);
+					int caret = tagEditor.getCaretPosition();
+					showingSuggestions[0] = true;
+					try {
+						tagsComboBox.setModel(m);
+					} finally {
+						showingSuggestions[0] = false;
+					}
+					tagEditor.setCaretPosition(Math.min(caret, tagEditor.getText().length()));
+					tagsComboBox.showPopup();
+				});
+			}
 		});
 
 		tagButton.addActionListener(e -> {
@@ -1046,17 +1355,7 @@ public abstract class GUI {
 				dialog.setVisible(true);
 				int choice = (Integer) option.getValue();
 				if (choice == JOptionPane.OK_OPTION) {
-
-					File file = new File("./Recipes/" + r.getName().replace(" ", "_") + ".txt");
-					try {
-						new RecipeParser().parseRecipeToFile(r, file);
-					} catch (FileNotFoundException fileNotFoundException) {
-						System.out.println("first error");
-						//TODO: add dialog to say communicate error
-					} catch (Throwable t) {
-						t.printStackTrace();
-						//TODO: put dialog
-					}
+					//saveRecipe journals the recipe, its file is written into ./Recipes/ when the journal is compacted
 					refreshRecipeList();
 					dialog.setVisible(false);
 					recipeFormWindow.setVisible(false);
@@ -1099,10 +1398,23 @@ public abstract class GUI {
 	}
 
 	/**
-	 * Re-add the list data to recipes to refresh it
+	 * Show any recipes added to recipeBook since the last refresh in the list
 	 */
 	private void refreshRecipeList() {
-		recipes.setListData(getRecipes().namesToArray());
+		recipesModel.refresh();
+	}
+
+	/**
+	 * Select a recipe in the list, or nothing if the filter hides it.
+	 * @param ordinal   Position of the recipe in recipeBook
+	 */
+	private void selectRecipe(int ordinal) {
+		int row = recipesModel.getRowOf(ordinal);
+		if (row == -1) {
+			recipes.clearSelection();
+		} else {
+			recipes.setSelectedIndex(row);
+		}
 	}
 
 	/**
@@ -1111,12 +1423,14 @@ public abstract class GUI {
 	 */
 	private void loadRecipe(File f) {
 		try {
+			RecipeSnapshot.Source source = RecipeSnapshot.Source.of(f);
 			Recipe r = new RecipeParser().parseRecipeFromFile(f);
 			if (getRecipes().checkForDuplicate(r)) { return; }
+			setSource(r.getName(), source); //before saving, so the journal records where it came from
 			saveRecipe(r);
 			loadTags(r.getTags());
 			refreshRecipeList();
-			recipes.setSelectedIndex(getRecipes().namesToArray().length - 1);
+			selectRecipe(getRecipes().size() - 1);
 		} catch (FileNotFoundException fileNotFoundException) {
 			JOptionPane fileNotFound = new JOptionPane();
 			fileNotFound.setOptionType(JOptionPane.DEFAULT_OPTION);
@@ -0,0 +1,73 @@
+import recipeInfo.RecipeHeader;
+
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects parsed recipes from import threads and hands them to the event thread in batches, at most once a frame, so a
+ * bulk import updates the book, tags and list a few dozen times a second however fast files are parsed.
+ * Recipes can be added from any thread, and batches are applied on the event thread by a Swing Timer.
+ */
+public class ImportBatcher {
+	private static final int FRAME_MILLIS = 16;
+
+	private final BiConsumer<List<RecipeHeader>, List<RecipeSnapshot.Source>> apply;
+	private final Timer timer;
+	private List<RecipeHeader> recipes = new ArrayList<>();
+	private List<RecipeSnapshot.Source> sources = new ArrayList<>();
+	private boolean closed;
+
+	/**
+	 * @param apply Applies a batch of recipes along with the file each came from, called on the event thread
+	 */
+	public ImportBatcher(BiConsumer<List<RecipeHeader>, List<RecipeSnapshot.Source>> apply) {
+		this.apply = apply;
+		this.timer = new Timer(FRAME_MILLIS, e -> flush());
+		timer.setCoalesce(true); //a slow batch shouldn't queue up ticks behind it
+	}
+
+	/**
+	 * Start applying batches. Must be called on the event thread.
+	 */
+	public void start() {
+		timer.start();
+	}
+
+	/**
+	 * Queue a recipe for the next batch. Recipes added once the batcher is closed are dropped.
+	 * @param r Recipe to add, which may be just its header
+	 * @param source    File it came from
+	 */
+	public synchronized void add(RecipeHeader r, RecipeSnapshot.Source source) {
+		if (closed) { return; }
+		recipes.add(r);
+		sources.add(source);
+	}
+
+	/**
+	 * Apply everything queued so far as one batch. Must be called on the event thread.
+	 */
+	public void flush() {
+		List<RecipeHeader> batch;
+		List<RecipeSnapshot.Source> batchSources;
+		synchronized (this) {
+			if (recipes.isEmpty()) { return; }
+			batch = recipes;
+			batchSources = sources;
+			recipes = new ArrayList<>();
+			sources = new ArrayList<>();
+		}
+		apply.accept(batch, batchSources);
+	}
+
+	/**
+	 * Apply whatever is left and stop. Must be called on the event thread.
+	 */
+	public void close() {
+		synchronized (this) { closed = true; }
+		timer.stop();
+		flush();
+	}
+}
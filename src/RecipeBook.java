@@ -1,25 +1,315 @@
 import recipeInfo.Recipe;
+import recipeInfo.RecipeHeader;
+import recipeInfo.index.CompressedBitmap;
+import recipeInfo.index.FullTextIndex;
+import recipeInfo.index.IngredientIndex;
+import recipeInfo.index.RecipeColumns;
+import recipeInfo.index.TagIndex;
+import recipeInfo.recipeContents.InfoBlock;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjIntConsumer;
 
 /**
  *  Collection of recipes and tags, has helpful recipe related methods such as duplicate checking, and various getters.
+ *  The book is safe to use from several threads. Its contents are held in an immutable Snapshot which readers
+ *  pick up without locking, and writers add recipes in batches by building and publishing the next snapshot, so
+ *  queries never wait for an import.
+ *  The book holds a RecipeHeader for each recipe, which is all filtering and listing need, and only loads a whole
+ *  recipe when it is asked for by name or position, so recipes restored from a snapshot stay on disk until viewed.
+ *  The text of each recipe is also kept in a FullTextIndex, and its ingredients in an IngredientIndex, both updated
+ *  as recipes are added. Recipes added by header alone aren't in them until saved indexes are
+ *  restored or indexMissingContents loads them.
  */
 public class RecipeBook {
-    private final ArrayList<Recipe> recipes;
-    private final HashSet<String> knownTags;
+    private volatile Snapshot current;
+    private final Object writeLock = new Object();
+    private final Set<String> knownTags;
+    private final boolean ignoreNameCase;
+    private volatile FullTextIndex fullText = new FullTextIndex(); //recipes by name key
+    private volatile IngredientIndex ingredients = new IngredientIndex(); //recipes by name key
+
+    private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal.withInitial(SplittableRandom::new);
 
     public RecipeBook(){
-        recipes = new ArrayList<>();
-        knownTags = new HashSet<>();
+        this(false);
+    }
+
+    /**
+     * @param ignoreNameCase    true if recipe names should be matched regardless of case
+     */
+    public RecipeBook(boolean ignoreNameCase) {
+        current = emptySnapshot();
+        knownTags = ConcurrentHashMap.newKeySet();
+        this.ignoreNameCase = ignoreNameCase;
     }
 
     public void addRecipe(Recipe r) {
-        recipes.add(r);
+        addRecipes(List.of(r));
+    }
+
+    /**
+     * Add a batch of recipes at once, e.g. the result of a folder import.
+     * The batch becomes visible to readers all together once it has been indexed.
+     * @param batch Recipes to add, in order
+     */
+    public void addRecipes(Collection<Recipe> batch) {
+        if (batch.isEmpty()) { return; }
+        List<RecipeHeader> headers = new ArrayList<>(batch.size());
+        for (Recipe r : batch) { headers.add(RecipeHeader.of(r)); }
+        synchronized (writeLock) {
+            current = append(current, headers);
+            for (Recipe r : batch) { index(nameKey(r.getName()), r); }
+        }
+    }
+
+    /**
+     * Add a batch of recipes whose bodies are loaded when asked for, e.g. ones restored from a snapshot.
+     * @param batch Headers of the recipes to add, in order
+     */
+    public void addHeaders(Collection<RecipeHeader> batch) {
+        if (batch.isEmpty()) { return; }
+        synchronized (writeLock) {
+            current = append(current, batch);
+        }
+    }
+
+    /**
+     * Remove and replace many recipes at once, e.g. when replaying the journal over a snapshot, rebuilding the
+     * indexes once rather than once per change. The removals come first, and every recipe after a removed one moves
+     * down an ordinal. Then a replacement keeps the place of the recipe it replaces, and recipes which aren't in the
+     * book by then are added at the end, in order. The new snapshot is built from scratch, leaving the old one
+     * untouched for anyone still reading it. The contents of every recipe changed are forgotten, so
+     * indexMissingContents indexes them again.
+     * @param removed   Names of the recipes to remove, ignoring any which aren't in the book
+     * @param changed   Recipes to put in the book, where one also in removed is added at the end
+     */
+    public void applyChanges(Collection<String> removed, Collection<RecipeHeader> changed) {
+        synchronized (writeLock) {
+            Snapshot s = current;
+            HashSet<String> gone = new HashSet<>();
+            for (String name : removed) {
+                String key = nameKey(name);
+                if (s.indexOf(key) != -1) { gone.add(key); }
+                forget(key);
+            }
+            LinkedHashMap<String, RecipeHeader> replacements = new LinkedHashMap<>();
+            List<RecipeHeader> added = new ArrayList<>();
+            for (RecipeHeader r : changed) {
+                String key = nameKey(r.getName());
+                forget(key);
+                if (s.indexOf(key) == -1 || gone.contains(key)) {
+                    added.add(r);
+                } else {
+                    replacements.put(key, r);
+                }
+            }
+            if (gone.isEmpty() && replacements.isEmpty()) {
+                current = append(s, added);
+                return;
+            }
+            List<RecipeHeader> all = new ArrayList<>(s.size - gone.size() + added.size());
+            for (int i = 0; i < s.size; i++) {
+                String key = nameKey(s.recipes[i].getName());
+                if (gone.contains(key)) { continue; }
+                all.add(replacements.getOrDefault(key, s.recipes[i]));
+            }
+            all.addAll(added);
+            current = append(emptySnapshot(), all);
+        }
+    }
+
+    /**
+     * Index the contents of a recipe. Must hold the write lock.
+     */
+    private void index(String key, Recipe r) {
+        fullText.add(key, r);
+        ingredients.add(key, r);
+    }
+
+    /**
+     * Forget the indexed contents of a recipe. Must hold the write lock.
+     */
+    private void forget(String key) {
+        fullText.remove(key);
+        ingredients.remove(key);
+    }
+
+    /**
+     * Use a full text index saved by an earlier run, dropping any recipe it holds which isn't in the book.
+     * Recipes in the book it doesn't hold can then be indexed with indexMissingContents.
+     * @param saved Index read with FullTextIndex.open
+     */
+    public void restoreTextIndex(FullTextIndex saved) {
+        synchronized (writeLock) {
+            Snapshot s = current;
+            saved.removeIf(key -> s.indexOf(key) == -1);
+            fullText = saved;
+        }
+    }
+
+    /**
+     * Use an ingredient index saved by an earlier run, dropping any recipe it holds which isn't in the book.
+     * Recipes in the book it doesn't hold can then be indexed with indexMissingContents.
+     * @param saved Index read with IngredientIndex.open
+     */
+    public void restoreIngredientIndex(IngredientIndex saved) {
+        synchronized (writeLock) {
+            Snapshot s = current;
+            saved.removeIf(key -> s.indexOf(key) == -1);
+            ingredients = saved;
+        }
+    }
+
+    /**
+     * Forget the indexed text and ingredients of a recipe, e.g. one restored from saved indexes whose file has
+     * changed since, so indexMissingContents indexes it again.
+     * @param name  Name of the recipe
+     */
+    public void forgetContents(String name) {
+        synchronized (writeLock) {
+            forget(nameKey(name));
+        }
+    }
+
+    /**
+     * Index the text and ingredients of every recipe in the book which is missing from either index, loading each
+     * one. Slow for a large book of restored recipes, so meant for a background thread. A recipe changed while it
+     * is being loaded is left to the change, which indexes it itself.
+     */
+    public void indexMissingContents() {
+        Snapshot s = current;
+        for (int i = 0; i < s.size; i++) {
+            RecipeHeader header = s.recipes[i];
+            String key = nameKey(header.getName());
+            if (fullText.contains(key) && ingredients.contains(key)) { continue; }
+            Recipe r;
+            try {
+                r = header.getRecipe(); //loaded outside the lock, as it may read a file
+            } catch (IllegalStateException e) {
+                continue; //its file has gone or no longer parses, so there's nothing to index
+            }
+            synchronized (writeLock) {
+                Snapshot now = current;
+                int at = now.indexOf(key);
+                if (at != -1 && now.recipes[at] == header) { index(key, r); } //adding skips an index which has it
+            }
+        }
+    }
+
+    /**
+     * Save the full text index, so it can be restored next run rather than built again.
+     * @param file  File to write
+     * @throws IOException if the file can't be written
+     */
+    public void writeTextIndex(File file) throws IOException {
+        fullText.write(file);
+    }
+
+    /**
+     * Save the ingredient index, so it can be restored next run rather than built again.
+     * @param file  File to write
+     * @throws IOException if the file can't be written
+     */
+    public void writeIngredientIndex(File file) throws IOException {
+        ingredients.write(file);
+    }
+
+    /**
+     * Find the recipes which can be cooked, or nearly, from the ingredients to hand, most of their ingredients
+     * covered first.
+     * @param pantry    Names of the ingredients to hand
+     * @param maxMissing    Most ingredients a recipe can need which aren't in the pantry
+     * @param limit Most recipes wanted
+     * @return  the best recipes, best first, each with the name of the recipe as its key
+     */
+    public List<IngredientIndex.Match> canCook(Collection<String> pantry, int maxMissing, int limit) {
+        List<IngredientIndex.Match> found = ingredients.canCook(pantry, maxMissing, limit);
+        Snapshot s = current;
+        List<IngredientIndex.Match> named = new ArrayList<>(found.size());
+        for (IngredientIndex.Match m : found) {
+            int index = s.indexOf(m.getKey());
+            if (index != -1) { named.add(new IngredientIndex.Match(s.recipes[index].getName(), m.getHave(), m.getNeeded())); }
+        }
+        return named;
+    }
+
+    /**
+     * Find the recipes whose name, ingredients or method best match a query.
+     * @param query Words to look for
+     * @param limit Most recipes wanted
+     * @return  names of the best matching recipes, best first
+     */
+    public List<String> searchText(String query, int limit) {
+        List<String> keys = fullText.search(query, limit);
+        Snapshot s = current;
+        List<String> names = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            int index = s.indexOf(key);
+            if (index != -1) { names.add(s.recipes[index].getName()); }
+        }
+        return names;
+    }
+
+    private static Snapshot emptySnapshot() {
+        return new Snapshot(new RecipeHeader[16], 0, new ConcurrentHashMap<>(), new TagIndex(), new RecipeColumns());
+    }
+
+    /**
+     * Build the snapshot following another with a batch of recipes added. Must hold the write lock.
+     * @param s Snapshot to add to, which is left unchanged for its readers
+     * @param batch Headers of the recipes to add, in order
+     * @return  the next snapshot
+     */
+    private Snapshot append(Snapshot s, Collection<RecipeHeader> batch) {
+        int size = s.size + batch.size();
+        //slots past the current size are never read by existing snapshots, so they can be written in place
+        RecipeHeader[] recipes = size > s.recipes.length ? Arrays.copyOf(s.recipes, Math.max(size, s.recipes.length * 2)) : s.recipes;
+        TagIndex tags = s.tags.copy();
+        List<InfoBlock> infos = new ArrayList<>(batch.size());
+        int ordinal = s.size;
+        for (RecipeHeader r : batch) {
+            recipes[ordinal] = r;
+            s.names.putIfAbsent(nameKey(r.getName()), ordinal);
+            tags.add(ordinal, r.getTags());
+            infos.add(r.getInfo());
+            ordinal++;
+        }
+        return new Snapshot(recipes, size, s.names, tags, s.columns.append(infos));
+    }
+
+    /**
+     * Get the number of recipes in the book.
+     * @return  number of recipes
+     */
+    public int size() {
+        return current.size;
+    }
+
+    /**
+     * Get the key a recipe name is stored under in the name index.
+     * @param name  Name of recipe
+     * @return  key for the index
+     */
+    private String nameKey(String name) {
+        return ignoreNameCase ? name.toUpperCase(Locale.ROOT) : name;
     }
 
     /**
@@ -28,10 +318,16 @@ public class RecipeBook {
      * @return true if recipe exists, false if it's new
      */
     public Boolean checkForDuplicate(Recipe r) {
-        for (Recipe recipe : recipes) {
-            if (recipe.getName().equals(r.getName())) { return true; }
-        }
-        return false;
+        return checkForDuplicate(r.getName());
+    }
+
+    /**
+     * Check whether a recipe with a name already exists in the book.
+     * @param name  Name of the recipe
+     * @return true if a recipe has that name, false if it's new
+     */
+    public Boolean checkForDuplicate(String name) {
+        return current.indexOf(nameKey(name)) != -1;
     }
 
     /**
@@ -40,9 +336,7 @@ public class RecipeBook {
      * @return  true if tag was recorded, false if tag already exists
      */
     public boolean checkAndAddTag(String tag) {
-        if (knownTags.contains(tag.toUpperCase())) { return false; }
-        knownTags.add(tag.toUpperCase());
-        return true;
+        return knownTags.add(tag.toUpperCase());
     }
 
     /**
@@ -50,16 +344,29 @@ public class RecipeBook {
      * @return  String array of recipe names
      */
     public String[] namesToArray() {
-        String[] names = new String[recipes.size()];
-        int count = 0;
-        for (Recipe r : recipes) {
-            names[count] = r.getName();
-            count++;
+        Snapshot s = current;
+        String[] names = new String[s.size];
+        for (int i = 0; i < s.size; i++) {
+            names[i] = s.recipes[i].getName();
         }
         return names;
     }
 
-    public HashSet<String> getTags() {
+    /**
+     * Call an action for every tag used in the book, with the number of recipes using it, e.g. to take in the tags
+     * of a restored book a tag at a time rather than a recipe at a time.
+     * @param action    Given each tag and the number of recipes with it
+     */
+    public void forEachTag(ObjIntConsumer<String> action) {
+        TagIndex tags = current.tags;
+        for (int id = 0; id < tags.size(); id++) { action.accept(tags.getTagName(id), tags.getRecipesWith(id).cardinality()); }
+    }
+
+    /**
+     * Get every tag recorded so far. The set is safe to read while tags are being added.
+     * @return  set of known tags
+     */
+    public Set<String> getTags() {
         return knownTags;
     }
 
@@ -69,10 +376,31 @@ public class RecipeBook {
      * @return  recipe at that index, null if index is out of bounds
      */
     public Recipe getRecipeAt(int index) {
-        if (index >= recipes.size()) {
+        RecipeHeader header = getHeaderAt(index);
+        return header == null ? null : header.getRecipe();
+    }
+
+    /**
+     * Get every recipe in the book at one moment, e.g. to save them. Unlike going through getHeaderAt one index at
+     * a time, changes made meanwhile can't cause a recipe to be missed or seen twice.
+     * @return  unmodifiable list of the headers of the recipes, in order
+     */
+    public List<RecipeHeader> getHeaders() {
+        Snapshot s = current;
+        return Collections.unmodifiableList(Arrays.asList(s.recipes).subList(0, s.size)); //never changed below size
+    }
+
+    /**
+     * Get the header of the recipe at given index in the book, without loading the rest of the recipe.
+     * @param index Index of recipe
+     * @return  header of the recipe at that index, null if index is out of bounds
+     */
+    public RecipeHeader getHeaderAt(int index) {
+        Snapshot s = current;
+        if (index >= s.size) {
             return null;
         }
-        return recipes.get(index);
+        return s.recipes[index];
     }
 
     /**
@@ -81,42 +409,285 @@ public class RecipeBook {
      * @return  recipe if can be found, null if doesn't exist
      */
     public Recipe getRecipeByName(String r) {
-        for (Recipe recipe : recipes) {
-            if (recipe.getName().equals(r)) { return recipe; }
-        }
-        return null;
+        Snapshot s = current;
+        int index = s.indexOf(nameKey(r));
+        return index == -1 ? null : s.recipes[index].getRecipe();
     }
 
     /**
-     * Gets a random recipe from a list of qualifying recipes.
+     * Gets a random recipe from the qualifying recipes, using this thread's random generator.
      * @param numServes Number of serves of the recipe
      * @param maxTime   Max time allowed for the recipe to take
      * @param tags  Tags the recipe has to have
      * @return  Recipe which matches qualifiers
      */
     public String getRecipeWhere (int numServes, Duration maxTime, List<String> tags) {
-        List<Recipe> recipeCandidates = getRecipesWhere(numServes, maxTime, tags);
-        if (recipeCandidates.isEmpty()) { return null; }
-        if (recipeCandidates.size() == 1) { return recipeCandidates.get(0).getName(); }
-        return recipeCandidates.get((int)Math.round(Math.random() * (recipeCandidates.size() - 1))).getName();
+        return getRecipeWhere(numServes, maxTime, tags, RANDOM.get());
+    }
+
+    /**
+     * Gets a random recipe from the qualifying recipes.
+     * Every qualifying recipe is equally likely. Candidates are reservoir sampled in a single pass over the columns,
+     * or over the rarest tag's bitmap if there are tags, so nothing is allocated.
+     * @param numServes Number of serves of the recipe
+     * @param maxTime   Max time allowed for the recipe to take
+     * @param tags  Tags the recipe has to have
+     * @param random    Random generator to use, e.g. a seeded one for repeatable plans
+     * @return  Recipe which matches qualifiers, null if there are none
+     */
+    public String getRecipeWhere (int numServes, Duration maxTime, List<String> tags, SplittableRandom random) {
+        Snapshot s = current;
+        RecipeColumns columns = s.columns;
+        int maxMinutes = RecipeColumns.toMinutes(maxTime.toMinutes());
+        int chosen = -1;
+        int seen = 0;
+        if (tags.isEmpty()) {
+            for (int i = columns.nextMatch(0, numServes, maxMinutes); i >= 0; i = columns.nextMatch(i + 1, numServes, maxMinutes)) {
+                if (random.nextInt(++seen) == 0) { chosen = i; } //keep each candidate with probability 1/seen
+            }
+        } else {
+            CompressedBitmap rarest = s.tags.getRarest(tags);
+            if (rarest == null) { return null; }
+            for (int i = rarest.nextSetBit(0); i >= 0; i = rarest.nextSetBit(i + 1)) {
+                if (!columns.matches(i, numServes, maxMinutes) || !s.tags.hasAll(i, tags)) { continue; }
+                if (random.nextInt(++seen) == 0) { chosen = i; }
+            }
+        }
+        return chosen == -1 ? null : s.recipes[chosen].getName();
     }
 
 
+    /**
+     * Gets a number of different random recipes from the qualifying recipes in one pass.
+     * @param count Number of recipes wanted
+     * @param numServes Number of serves of the recipe
+     * @param maxTime   Max time allowed for the recipe to take
+     * @param tags  Tags the recipe has to have
+     * @param exclude   Names of recipes which shouldn't be picked, e.g. ones already generated
+     * @param random    Random generator to use
+     * @return  names of up to count distinct qualifying recipes, in random order
+     */
+    public List<String> getDistinctRecipesWhere(int count, int numServes, Duration maxTime, List<String> tags,
+                                        Collection<String> exclude, SplittableRandom random) {
+        Snapshot s = current;
+        BitSet excluded = ordinalsOf(s, exclude);
+        int[] chosen = new int[Math.max(count, 0)];
+        int found = sample(s, chosen, chosen.length, numServes, RecipeColumns.toMinutes(maxTime.toMinutes()), tags, excluded, random);
+        List<String> names = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) { names.add(s.recipes[chosen[i]].getName()); }
+        return names;
+    }
+
+    /**
+     * Fill a meal plan, giving every slot a different recipe which meets that slot's qualifiers.
+     * Slots with the same qualifiers are filled together by one sampling pass. The groups with the fewest
+     * qualifying recipes are filled first, so a slot which would take anything can't use up the only recipes a more
+     * particular slot could have.
+     * @param slots Qualifiers for each slot of the plan
+     * @param exclude   Names of recipes which mustn't be picked
+     * @param random    Random generator to use
+     * @return  the name of the recipe for each slot, null where no unused recipe qualified
+     */
+    public String[] planMeals(List<MealSlot> slots, Collection<String> exclude, SplittableRandom random) {
+        LinkedHashMap<MealSlot, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < slots.size(); i++) {
+            groups.computeIfAbsent(slots.get(i), k -> new ArrayList<>()).add(i);
+        }
+        Snapshot s = current;
+        String[] plan = new String[slots.size()];
+        BitSet used = ordinalsOf(s, exclude);
+        HashMap<MealSlot, Integer> candidates = new HashMap<>();
+        for (MealSlot slot : groups.keySet()) {
+            candidates.put(slot, countCandidates(s, slot.numServes, RecipeColumns.toMinutes(slot.maxTime.toMinutes()), slot.tags, used));
+        }
+        List<MealSlot> order = new ArrayList<>(groups.keySet());
+        order.sort(Comparator.comparingInt(candidates::get)); //stable, so ties keep the order they were asked in
+        for (MealSlot slot : order) {
+            List<Integer> positions = groups.get(slot);
+            int[] chosen = new int[positions.size()];
+            int found = sample(s, chosen, chosen.length, slot.numServes, RecipeColumns.toMinutes(slot.maxTime.toMinutes()), slot.tags, used, random);
+            for (int i = 0; i < found; i++) {
+                used.set(chosen[i]);
+                plan[positions.get(i)] = s.recipes[chosen[i]].getName();
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return  the ordinals of the recipes with the names given which are in the snapshot
+     */
+    private BitSet ordinalsOf(Snapshot s, Collection<String> names) {
+        BitSet ordinals = new BitSet(s.size);
+        for (String name : names) {
+            int index = s.indexOf(nameKey(name));
+            if (index != -1) { ordinals.set(index); }
+        }
+        return ordinals;
+    }
+
+    /**
+     * Count the qualifying recipes, which are the ones sample picks from.
+     * @return  number of recipes which meet the qualifiers and aren't excluded
+     */
+    private static int countCandidates(Snapshot s, int numServes, int maxMinutes, List<String> tags, BitSet excluded) {
+        RecipeColumns columns = s.columns;
+        int count = 0;
+        if (tags.isEmpty()) {
+            for (int i = columns.nextMatch(0, numServes, maxMinutes); i >= 0; i = columns.nextMatch(i + 1, numServes, maxMinutes)) {
+                if (!excluded.get(i)) { count++; }
+            }
+            return count;
+        }
+        CompressedBitmap rarest = s.tags.getRarest(tags);
+        if (rarest == null) { return 0; }
+        for (int i = rarest.nextSetBit(0); i >= 0; i = rarest.nextSetBit(i + 1)) {
+            if (!excluded.get(i) && columns.matches(i, numServes, maxMinutes) && s.tags.hasAll(i, tags)) { count++; }
+        }
+        return count;
+    }
+
+    /**
+     * Pick up to count distinct qualifying recipes uniformly at random, using reservoir sampling.
+     * @param s Snapshot to pick from
+     * @param out   Array to put the chosen ordinals in
+     * @param count Number of recipes wanted
+     * @param numServes Number of serves required, 0 for any
+     * @param maxMinutes    Max total time in minutes, under 1 for any
+     * @param tags  Tags the recipes must have
+     * @param excluded  Ordinals which can't be picked
+     * @param random    Random generator to use
+     * @return  number of ordinals put in out
+     */
+    private static int sample(Snapshot s, int[] out, int count, int numServes, int maxMinutes, List<String> tags, BitSet excluded, SplittableRandom random) {
+        if (count == 0) { return 0; }
+        RecipeColumns columns = s.columns;
+        int seen = 0;
+        if (tags.isEmpty()) {
+            for (int i = columns.nextMatch(0, numServes, maxMinutes); i >= 0; i = columns.nextMatch(i + 1, numServes, maxMinutes)) {
+                if (!excluded.get(i)) { seen = offer(out, count, seen, i, random); }
+            }
+        } else {
+            CompressedBitmap rarest = s.tags.getRarest(tags);
+            if (rarest == null) { return 0; }
+            for (int i = rarest.nextSetBit(0); i >= 0; i = rarest.nextSetBit(i + 1)) {
+                if (excluded.get(i) || !columns.matches(i, numServes, maxMinutes) || !s.tags.hasAll(i, tags)) { continue; }
+                seen = offer(out, count, seen, i, random);
+            }
+        }
+        int found = Math.min(seen, count);
+        //the reservoir keeps early candidates in place, so shuffle to make the order random too
+        for (int i = found - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = out[i];
+            out[i] = out[j];
+            out[j] = temp;
+        }
+        return found;
+    }
+
+    /**
+     * Offer a candidate to a reservoir.
+     * @return  number of candidates seen including this one
+     */
+    private static int offer(int[] reservoir, int count, int seen, int candidate, SplittableRandom random) {
+        if (seen < count) {
+            reservoir[seen] = candidate;
+        } else {
+            int slot = random.nextInt(seen + 1);
+            if (slot < count) { reservoir[slot] = candidate; }
+        }
+        return seen + 1;
+    }
+
     /**
      * Get all recipes which meet qualifiers.
-     @param numServes Number of serves of the recipe
-      * @param maxTime   Max time allowed for the recipe to take
+     * Serves and time are checked against the column store, and if there are tags only the recipes in the
+     * intersection of their tag bitmaps are looked at. Only the recipes which qualify are loaded.
+     * @param numServes Number of serves of the recipe
+     * @param maxTime   Max time allowed for the recipe to take
      * @param tags  Tags the recipe has to have
      * @return list of recipes which match qualifiers
      */
     public List<Recipe> getRecipesWhere(int numServes, Duration maxTime, List<String> tags) {
-        List<Recipe> potentialRecipes = new ArrayList<>(recipes);
-        if (numServes != 0) {
-            potentialRecipes = potentialRecipes.stream().filter(s -> s.getInfo().getServes() == numServes).collect(Collectors.toList());
+        Snapshot s = current;
+        RecipeColumns columns = s.columns;
+        List<Recipe> potentialRecipes = new ArrayList<>();
+        int maxMinutes = RecipeColumns.toMinutes(maxTime.toMinutes());
+        if (tags.isEmpty()) {
+            for (int i = columns.nextMatch(0, numServes, maxMinutes); i >= 0; i = columns.nextMatch(i + 1, numServes, maxMinutes)) {
+                potentialRecipes.add(s.recipes[i].getRecipe());
+            }
+            return potentialRecipes;
         }
-        if (maxTime.toMinutes() >= 1) {
-            potentialRecipes = potentialRecipes.stream().filter(s -> s.getTotTime().toMinutes() <= maxTime.toMinutes()).collect(Collectors.toList());
+        CompressedBitmap tagged = s.tags.getRecipesWithAll(tags);
+        for (int i = tagged.nextSetBit(0); i >= 0; i = tagged.nextSetBit(i + 1)) {
+            if (columns.matches(i, numServes, maxMinutes)) { potentialRecipes.add(s.recipes[i].getRecipe()); }
+        }
+        return potentialRecipes;
+    }
+
+    /**
+     * The contents of the book at one point in time.
+     * Nothing a snapshot can see changes after it is published. The header array and columns are shared with later
+     * snapshots, which only ever write past this snapshot's size, and the name index may hold names added later,
+     * which are ignored as their ordinals are past this snapshot's size.
+     */
+    private static final class Snapshot {
+        private final RecipeHeader[] recipes;
+        private final int size;
+        private final ConcurrentHashMap<String, Integer> names; //name key -> ordinal of the first recipe with that name
+        private final TagIndex tags;
+        private final RecipeColumns columns; //serves and times by ordinal, for filtering
+
+        private Snapshot(RecipeHeader[] recipes, int size, ConcurrentHashMap<String, Integer> names, TagIndex tags, RecipeColumns columns) {
+            this.recipes = recipes;
+            this.size = size;
+            this.names = names;
+            this.tags = tags;
+            this.columns = columns;
+        }
+
+        /**
+         * @param key   Name key to look up
+         * @return  ordinal of the recipe with that name, -1 if it isn't in this snapshot
+         */
+        private int indexOf(String key) {
+            Integer index = names.get(key);
+            return index == null || index >= size ? -1 : index;
+        }
+    }
+
+    /**
+     * Qualifiers for one slot of a meal plan.
+     */
+    public static class MealSlot {
+        private final int numServes;
+        private final Duration maxTime;
+        private final List<String> tags;
+
+        /**
+         * @param numServes Number of serves, 0 for any
+         * @param maxTime   Max time allowed, 0 for any
+         * @param tags  Tags the recipe has to have
+         */
+        public MealSlot(int numServes, Duration maxTime, List<String> tags) {
+            this.numServes = numServes;
+            this.maxTime = maxTime;
+            this.tags = List.copyOf(tags);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MealSlot slot = (MealSlot) o;
+            return numServes == slot.numServes && maxTime.equals(slot.maxTime) && tags.equals(slot.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(numServes, maxTime, tags);
         }
-        return potentialRecipes.stream().filter(s -> s.getTags().containsAll(tags)).collect(Collectors.toList());
     }
 }
@@ -0,0 +1,107 @@
+import recipeInfo.Recipe;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming reader for bundle files, which hold any number of recipes back to back.
+ * Recipes are parsed one at a time as they are asked for, through a lexer which only keeps a small window of the
+ * file in memory, so a bundle of any size can be read. The reader is an Iterator, and can also be wrapped as a
+ * Spliterator or Stream, which hands recipes out in batches so later stages can run in parallel.
+ * A recipe which fails to parse is reported by next throwing an IllegalArgumentException, after skipping to the
+ * end of that recipe, so the caller can carry on with the rest of the bundle.
+ */
+public class RecipeBundleReader implements Iterator<Recipe>, Closeable {
+	public static final String EXTENSION = ".bundle";
+
+	private final InputStream in;
+	private final RecipeLexer lexer;
+	private final RecipeParser parser = new RecipeParser();
+	private int read; //recipes read so far, for error messages
+
+	public RecipeBundleReader(InputStream in) {
+		this.in = in;
+		this.lexer = new RecipeLexer(in);
+	}
+
+	/**
+	 * Open a bundle file for reading.
+	 * @param file  Bundle to read
+	 * @return  a reader positioned at the first recipe
+	 * @throws IOException if the file can't be opened
+	 */
+	public static RecipeBundleReader open(File file) throws IOException {
+		return new RecipeBundleReader(new BufferedInputStream(new FileInputStream(file)));
+	}
+
+	/**
+	 * @param file  File to check
+	 * @return  true if the file is named as a bundle
+	 */
+	public static boolean isBundle(File file) {
+		return file.getName().endsWith(EXTENSION);
+	}
+
+	/**
+	 * @return  true if there is another recipe
+	 * @throws UncheckedIOException if the file can't be read
+	 */
+	@Override
+	public boolean hasNext() {
+		return !lexer.atEnd();
+	}
+
+	/**
+	 * @return  the next recipe in the bundle
+	 * @throws IllegalArgumentException if the recipe is badly formatted, the reader moves on to the next one
+	 * @throws UncheckedIOException if the file can't be read
+	 */
+	@Override
+	public Recipe next() {
+		if (!hasNext()) { throw new NoSuchElementException(); }
+		read++;
+		try {
+			return parser.parseRecipe(lexer);
+		} catch (IllegalArgumentException e) {
+			lexer.skipPast(RecipeLexer.TAG_CLOSE); //every recipe ends with its tag block
+			throw new IllegalArgumentException("Recipe " + read + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return  the remaining recipes as a spliterator, which splits off batches for parallel streams
+	 */
+	public Spliterator<Recipe> spliterator() {
+		return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	/**
+	 * @param parallel  true to process recipes in parallel once they are parsed
+	 * @return  the remaining recipes as a stream, which closes the reader when it is closed
+	 */
+	public Stream<Recipe> stream(boolean parallel) {
+		return StreamSupport.stream(spliterator(), parallel).onClose(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,68 @@
+import recipeInfo.Recipe;
+import recipeInfo.RecipeCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compares the binary RecipeCodec with the text format, on made up recipes.
+ * First checks every recipe decodes to one which writes exactly the same text format, then times encoding and
+ * decoding both ways over a few rounds (the first rounds warm up the JIT) and prints the size of each.
+ * Run with: java RecipeCodecBenchmark [number of recipes]
+ */
+public class RecipeCodecBenchmark {
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+		List<Recipe> recipes = SyntheticRecipes.recipes(count, 20);
+
+		RecipeCodec encoder = new RecipeCodec();
+		RecipeCodec decoder = new RecipeCodec();
+		for (Recipe r : recipes) {
+			Recipe decoded = decoder.decode(ByteBuffer.wrap(encoder.encode(r)));
+			if (!decoded.toFileFormat().equals(r.toFileFormat())) {
+				throw new IllegalStateException(r.getName() + " doesn't round trip:\n" + r.toFileFormat() + "\n" + decoded.toFileFormat());
+			}
+		}
+		System.out.println(count + " recipes round trip exactly");
+
+		RecipeParser parser = new RecipeParser();
+		byte[][] text = new byte[count][];
+		byte[][] binary = new byte[count][];
+		for (int round = 1; round <= ROUNDS; round++) {
+			long start = System.nanoTime();
+			long textBytes = 0;
+			for (int i = 0; i < count; i++) {
+				text[i] = recipes.get(i).toFileFormat().getBytes(StandardCharsets.UTF_8);
+				textBytes += text[i].length;
+			}
+			long textEncode = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int sink = 0;
+			for (byte[] t : text) { sink += parser.parseRecipe(t, 0, t.length).getIngredients().size(); }
+			long textDecode = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long binaryBytes = 0;
+			RecipeCodec streamEncoder = new RecipeCodec(); //a fresh stream each round, so names are written in full again
+			for (int i = 0; i < count; i++) {
+				binary[i] = streamEncoder.encode(recipes.get(i));
+				binaryBytes += binary[i].length;
+			}
+			long binaryEncode = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			RecipeCodec streamDecoder = new RecipeCodec();
+			for (byte[] b : binary) { sink -= streamDecoder.decode(ByteBuffer.wrap(b)).getIngredients().size(); }
+			long binaryDecode = System.nanoTime() - start;
+			if (sink != 0) { throw new IllegalStateException("Text and binary decoded different recipes"); }
+
+			System.out.printf("round %d: text encode %.1f ms, decode %.1f ms, %d bytes | binary encode %.1f ms, decode %.1f ms, %d bytes (%.0f%% of text)%n",
+					round, textEncode / 1e6, textDecode / 1e6, textBytes, binaryEncode / 1e6, binaryDecode / 1e6,
+					binaryBytes, 100.0 * binaryBytes / textBytes);
+		}
+	}
+}
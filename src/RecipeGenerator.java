@@ -1,21 +1,331 @@
 import recipeInfo.Recipe;
-import recipeInfo.tags.TagTrieNode;
+import recipeInfo.RecipeHeader;
+import recipeInfo.index.FullTextIndex;
+import recipeInfo.index.IngredientIndex;
+import recipeInfo.tags.TagDictionary;
+import recipeInfo.tags.TagSuffixIndex;
+import recipeInfo.tags.TagTrie;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 /**
  * Main class for the program.
- * Implements any abstract methods from GUI and contains the master RecipeBook and TagTrieNode.
+ * Implements any abstract methods from GUI and contains the master RecipeBook and TagTrie.
+ * Tags from earlier runs come from the saved TagDictionary, and the TagTrie is a small delta holding the tags the
+ * dictionary is missing and the tags used this run, until they are merged into the dictionary on exit. Restored
+ * recipes aren't fed through loadTags, their tags are taken in from the book's tag index, one tag at a time.
+ * The book itself is saved to a RecipeSnapshot and restored from it at startup, with each recipe's ingredients and
+ * method left in the mapped snapshot until the recipe is viewed. Changes made in between are
+ * appended to a RecipeJournal as they happen, which is replayed over the snapshot and folded into it once it grows.
+ * The book's full text and ingredient indexes are saved next to the snapshot, and any recipe restored without its
+ * text or ingredients is indexed in the background at startup.
  */
 public class RecipeGenerator extends GUI {
+    private static final int SUGGESTIONS = 10;
+    private static final File TAG_DICTIONARY = new File("./Recipes.tags");
+    private static final File SNAPSHOT = new File("./Recipes.snapshot");
+    private static final File JOURNAL = new File("./Recipes.journal");
+    private static final File TEXT_INDEX = new File("./Recipes.text");
+    private static final File INGREDIENT_INDEX = new File("./Recipes.ingredients");
+    private static final File LIBRARY = new File("./Recipes/");
+
     private final RecipeBook recipes =  new RecipeBook();
-    private final TagTrieNode trie = new TagTrieNode('\u0000');
+    private final TagTrie trie = new TagTrie(SUGGESTIONS);
+    private final TagSuffixIndex infixes = new TagSuffixIndex();
+    private final TagDictionary dictionary = openTagDictionary();
+    private final ConcurrentHashMap<String, RecipeSnapshot.Source> sources = new ConcurrentHashMap<>();
+    private final RecipeJournal journal = new RecipeJournal(JOURNAL);
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "compact-library");
+        t.setDaemon(true); //the shutdown hook compacts anyway
+        return t;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ExecutorService contentIndexer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "content-index");
+        t.setDaemon(true); //whatever isn't indexed by exit is indexed next run
+        return t;
+    });
+    private final AtomicBoolean indexQueued = new AtomicBoolean();
+    private boolean restoredStale; //the saved files didn't match the library at startup, so they're saved again
+
+    public RecipeGenerator() {
+        loadSnapshot();
+        replayJournal();
+        loadRestoredTags();
+        Thread indexer = new Thread(() -> dictionary.forEach((tag, uses) -> infixes.add(tag)), "tag-index");
+        indexer.setDaemon(true);
+        indexer.start();
+        indexContentsLater();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            saveTagDictionary();
+            try {
+                if (journal.isOpen()) {
+                    //when nothing changed since startup the saved files are already up to date
+                    if (restoredStale || !journal.isEmpty()) { journal.compact(this::saveLibrary); }
+                    journal.close();
+                } else {
+                    saveLibrary(); //nothing reached the journal this run, so the save is all there is
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); //the journal is kept, so nothing is lost
+            }
+        }, "save-library"));
+        finishLoading(); //the main window, and everything which changes the book, only opens from here
+    }
 
     public static void main(String[] args) {
         new RecipeGenerator();
     }
 
+    private static TagDictionary openTagDictionary() {
+        try {
+            return TagDictionary.open(TAG_DICTIONARY);
+        } catch (IOException e) {
+            e.printStackTrace(); //start without it, a new one is written on exit
+            return TagDictionary.empty();
+        }
+    }
+
+    /**
+     * Restore the book saved by the last run. Recipes whose files have changed since are parsed again, and
+     * recipes whose files have been deleted are dropped.
+     */
+    private void loadSnapshot() {
+        RecipeSnapshot snapshot = new RecipeSnapshot(SNAPSHOT);
+        if (!snapshot.exists()) { return; }
+        try {
+            RecipeSnapshot.Contents contents = snapshot.read();
+            List<RecipeHeader> loaded = contents.getHeaders();
+            List<RecipeSnapshot.Source> loadedSources = new ArrayList<>(contents.getSources());
+            //checking each file is a stat call, so check them all concurrently
+            boolean[] current = new boolean[loaded.size()];
+            IntStream.range(0, current.length).parallel().forEach(i ->
+                    current[i] = loadedSources.get(i) == null || loadedSources.get(i).isCurrent());
+            //a changed file's recipes are replaced by whatever it holds now, in the place of the first of them
+            LinkedHashMap<File, Integer> stale = new LinkedHashMap<>();
+            for (int i = 0; i < loaded.size(); i++) {
+                if (current[i]) { continue; }
+                restoredStale = true;
+                File file = loadedSources.get(i).getFile();
+                loaded.set(i, null);
+                if (file.exists()) { stale.putIfAbsent(file, i); }
+            }
+            HashMap<Integer, List<Integer>> reparsedAt = new HashMap<>();
+            //only headers are needed to index them, the rest is parsed from the file if the recipe is opened
+            RecipeImporter.Result result = new RecipeImporter(true).importFiles(new ArrayList<>(stale.keySet()), finished -> { });
+            for (int i = 0; i < result.getHeaders().size(); i++) {
+                int at = stale.get(result.getSources().get(i).getFile());
+                reparsedAt.computeIfAbsent(at, k -> new ArrayList<>()).add(i);
+            }
+
+            List<RecipeHeader> fresh = new ArrayList<>(loaded.size());
+            HashSet<String> names = new HashSet<>();
+            for (int i = 0; i < loaded.size(); i++) {
+                if (loaded.get(i) != null) { keep(loaded.get(i), loadedSources.get(i), fresh, names); }
+                for (int j : reparsedAt.getOrDefault(i, List.of())) {
+                    keep(result.getHeaders().get(j), result.getSources().get(j), fresh, names);
+                }
+            }
+            recipes.addHeaders(fresh);
+            restoreIndexes(result.getHeaders());
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace(); //start empty, the recipes can still be loaded from their files
+            restoredStale = true;
+        }
+    }
+
+    /**
+     * Restore the full text and ingredient indexes saved with the snapshot. Recipes they hold from files which have
+     * changed since are forgotten, to be indexed again with everything else they're missing.
+     * @param reparsed  Recipes parsed again from changed files
+     */
+    private void restoreIndexes(List<RecipeHeader> reparsed) {
+        restoredStale |= !TEXT_INDEX.exists() || !INGREDIENT_INDEX.exists();
+        try {
+            recipes.restoreTextIndex(FullTextIndex.open(TEXT_INDEX));
+        } catch (IOException e) {
+            e.printStackTrace(); //the whole book is indexed again instead
+            restoredStale = true;
+        }
+        try {
+            recipes.restoreIngredientIndex(IngredientIndex.open(INGREDIENT_INDEX));
+        } catch (IOException e) {
+            e.printStackTrace();
+            restoredStale = true;
+        }
+        reparsed.forEach(r -> recipes.forgetContents(r.getName()));
+    }
+
+    /**
+     * Keep a recipe restored at startup, unless an earlier one has its name, which a re-parsed file can cause.
+     */
+    private void keep(RecipeHeader r, RecipeSnapshot.Source source, List<RecipeHeader> fresh, Set<String> names) {
+        if (!names.add(r.getName())) { return; }
+        fresh.add(r);
+        if (source != null) { sources.put(r.getName(), source); }
+    }
+
+    /**
+     * Add the recipes saved since the snapshot was. A recipe already in the snapshot, which a crash part way
+     * through compaction can leave, is replaced in its place, so nothing is lost or doubled, and the whole journal
+     * is applied to the book at once. Recipes journaled by their file are parsed from it again, as it is now, and
+     * dropped if it has gone or no longer holds them, just as restoring the snapshot does.
+     */
+    private void replayJournal() {
+        List<RecipeJournal.Entry> entries;
+        try {
+            entries = journal.open();
+        } catch (IOException e) {
+            e.printStackTrace(); //recipes saved since the last snapshot can still be loaded from their files
+            return;
+        }
+        LinkedHashMap<String, RecipeJournal.Entry> last = new LinkedHashMap<>();
+        for (RecipeJournal.Entry e : entries) { last.put(e.getName(), e); } //a recipe saved twice keeps its first place
+        //each file is parsed once, and only for headers, like a changed file when restoring the snapshot
+        LinkedHashSet<File> files = new LinkedHashSet<>();
+        for (RecipeJournal.Entry e : last.values()) {
+            if (e.getType() == RecipeJournal.FILE) { files.add(e.getSource().getFile()); }
+        }
+        List<RecipeHeader> parsedHeaders = List.of();
+        List<RecipeSnapshot.Source> parsedSources = List.of();
+        if (!files.isEmpty()) {
+            try {
+                RecipeImporter.Result result = new RecipeImporter(true).importFiles(new ArrayList<>(files), finished -> { });
+                parsedHeaders = result.getHeaders();
+                parsedSources = result.getSources();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                e.printStackTrace(); //the recipes are dropped, but can still be loaded from their files
+            }
+        }
+        HashMap<File, Map<String, Integer>> parsed = new HashMap<>();
+        for (int i = 0; i < parsedHeaders.size(); i++) {
+            parsed.computeIfAbsent(parsedSources.get(i).getFile(), f -> new HashMap<>())
+                    .putIfAbsent(parsedHeaders.get(i).getName(), i);
+        }
+
+        List<String> removed = new ArrayList<>();
+        List<RecipeHeader> changed = new ArrayList<>();
+        for (RecipeJournal.Entry e : last.values()) {
+            if (e.getType() == RecipeJournal.ADD) {
+                changed.add(RecipeHeader.of(e.getRecipe()));
+                continue;
+            }
+            Integer at = parsed.getOrDefault(e.getSource().getFile(), Map.of()).get(e.getName());
+            if (at == null) {
+                removed.add(e.getName());
+                sources.remove(e.getName());
+                continue;
+            }
+            changed.add(parsedHeaders.get(at));
+            sources.put(e.getName(), parsedSources.get(at));
+        }
+        recipes.applyChanges(removed, changed);
+    }
+
+    /**
+     * Take in the tags of the recipes restored at startup from the book's tag index, with the number of recipes
+     * using each, rather than recipe by recipe. The dictionary already suggests the tags it holds, so only the ones
+     * it is missing, e.g. because it couldn't be saved last run, go into the trie.
+     */
+    private void loadRestoredTags() {
+        recipes.forEachTag((tag, uses) -> {
+            recipes.checkAndAddTag(tag);
+            String upper = tag.toUpperCase();
+            if (dictionary.getId(upper) == -1 && trie.addUses(upper, uses)) { infixes.add(upper); }
+        });
+    }
+
+    /**
+     * Index the text and ingredients of every recipe in the book which was added by header alone, in the
+     * background. Each run picks up everything added before it starts, so at most one more run is queued.
+     */
+    private void indexContentsLater() {
+        if (!indexQueued.compareAndSet(false, true)) { return; }
+        contentIndexer.execute(() -> {
+            indexQueued.set(false);
+            recipes.indexMissingContents();
+        });
+    }
+
+    /**
+     * Record added recipes in the journal, and compact it in the background once it has grown large.
+     * The records reach the disk in the next group flush, so this never waits on the disk.
+     * @param added Recipes added to the book
+     */
+    private void journalAdded(List<RecipeHeader> added) {
+        List<RecipeSnapshot.Source> addedSources = new ArrayList<>(added.size());
+        added.forEach(r -> addedSources.add(sources.get(r.getName())));
+        journal.add(added, addedSources).whenComplete((done, e) -> {
+            if (e != null) { e.printStackTrace(); }
+        });
+        if (journal.needsCompaction() && compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    journal.compact(this::saveLibrary);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Save everything in the journal for good: recipes created in the form are written out to the library folder
+     * as recipe files, then the whole book is saved to the snapshot, along with its full text and ingredient indexes.
+     * @throws IOException if a file or the snapshot can't be written
+     */
+    private void saveLibrary() throws IOException {
+        List<RecipeHeader> saved = recipes.getHeaders(); //recipes added meanwhile are left to the journal
+        RecipeParser parser = new RecipeParser();
+        for (RecipeHeader r : saved) {
+            if (sources.containsKey(r.getName())) { continue; }
+            if (!LIBRARY.isDirectory() && !LIBRARY.mkdirs()) { throw new IOException("Can't create " + LIBRARY); }
+            File file = new File(LIBRARY, r.getName().replace(" ", "_") + ".txt");
+            parser.parseRecipeToFile(r.getRecipe(), file);
+            sources.put(r.getName(), RecipeSnapshot.Source.of(file));
+        }
+        //recipes whose files have gone or no longer parse are left out, as they would be when restoring
+        new RecipeSnapshot(SNAPSHOT).write(saved, sources).forEach(Throwable::printStackTrace);
+        recipes.writeTextIndex(TEXT_INDEX);
+        recipes.writeIngredientIndex(INGREDIENT_INDEX);
+    }
+
+    /**
+     * Merge the tags seen this run into the saved dictionary. A tag's count is the most recipes seen using it in
+     * any one run, so loading the same library every run doesn't inflate the counts.
+     */
+    private void saveTagDictionary() {
+        if (trie.size() == 0) { return; }
+        TreeMap<String, Integer> counts = new TreeMap<>();
+        dictionary.forEach(counts::put);
+        trie.forEach((tag, uses) -> counts.merge(tag, uses, Math::max));
+        try {
+            TagDictionary.write(TAG_DICTIONARY, counts);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     protected RecipeBook getRecipes() {
         return recipes;
@@ -24,58 +334,64 @@ public class RecipeGenerator extends GUI {
     @Override
     protected void saveRecipe(Recipe r) {
         recipes.addRecipe(r);
+        journalAdded(List.of(RecipeHeader.of(r)));
+    }
+
+    @Override
+    protected void saveRecipes(List<RecipeHeader> r) {
+        recipes.addHeaders(r);
+        journalAdded(r);
+        indexContentsLater();
     }
 
     @Override
     protected void loadTags(ArrayList<String> tags) {
         for (String tag : tags) {
-            if (!recipes.checkAndAddTag(tag)) { continue; }
-            tag = tag.toUpperCase();
-            //if tag is new, add to the trie
-            TagTrieNode current = trie;
-            for (int i = 0; i < tag.length(); i++) {
-                if (current.getChildren().containsKey(tag.charAt(i))) {
-                    current = current.getChildren().get(tag.charAt(i));
-                }
-                else {
-                    TagTrieNode temp = new TagTrieNode(tag.charAt(i));
-                    current.addChild(tag.charAt(i), temp);
-                    current = temp;
-                }
-                current.addTag(tag);
-            }
+            //count every use so suggestions rank by popularity
+            String upper = tag.toUpperCase();
+            if (trie.addUse(upper) && dictionary.getId(upper) == -1) { infixes.add(upper); }
+            recipes.checkAndAddTag(tag);
         }
     }
 
     @Override
-    protected HashSet<String> getSuggestedTags(String tag) {
-        return searchTrie(tag.toUpperCase(), 0, trie);
+    protected List<String> getSuggestedTags(String tag) {
+        String prefix = tag.toUpperCase();
+        //exact prefix matches from this run and earlier ones, most used first
+        LinkedHashSet<String> exact = new LinkedHashSet<>(trie.suggest(prefix, SUGGESTIONS));
+        exact.addAll(dictionary.suggest(prefix, SUGGESTIONS));
+        ArrayList<String> ranked = new ArrayList<>(exact);
+        ranked.sort(Comparator.comparingInt((String t) -> -uses(t)).thenComparing(Comparator.naturalOrder()));
+
+        LinkedHashSet<String> merged = new LinkedHashSet<>(ranked.subList(0, Math.min(SUGGESTIONS, ranked.size())));
+        if (merged.size() < SUGGESTIONS) { merged.addAll(trie.suggestFuzzy(prefix, allowedEdits(tag.length()), SUGGESTIONS)); }
+        //fill up with tags containing the text further in
+        if (merged.size() < SUGGESTIONS && tag.length() >= 3) { merged.addAll(infixes.search(prefix, SUGGESTIONS)); }
+        return new ArrayList<>(merged).subList(0, Math.min(SUGGESTIONS, merged.size()));
     }
 
-    @Override
-    protected HashSet<String> getAllTags() {
-        return recipes.getTags();
+    private int uses(String tag) {
+        return Math.max(trie.getUses(tag), dictionary.getCount(tag));
     }
 
     /**
-     * Recursively searches the trie for the tag given.
-     * @param tag   Tag to search for
-     * @param currentPos    Current position down the tree
-     * @param currentNode   Currentl node in the tree
-     * @return  a Hashset of matching tags, null if none were found
+     * Number of typos to tolerate in a prefix. Short prefixes are matched exactly, as a couple of edits to
+     * them would match almost every tag.
+     * @param length    Length of the prefix
+     * @return  max edits for fuzzy matching
      */
-    private HashSet<String> searchTrie(String tag, int currentPos, TagTrieNode currentNode) {
-        char c = tag.charAt(currentPos);
+    private static int allowedEdits(int length) {
+        if (length < 3) { return 0; }
+        return length < 7 ? 1 : 2;
+    }
 
-        //if we've hit the end of the tag, and the final character is logged, return all tags at the node
-        if (currentPos == tag.length() - 1 && currentNode.getChildren().containsKey(c)) {
-            return currentNode.getChildren().get(c).getTags();
-        }
-        //else if the current key is logged, search again one node deeper
-        if (currentNode.getChildren().containsKey(c)) {
-            return searchTrie(tag, currentPos + 1, currentNode.getChildren().get(c));
-        }
-        //otherwise no similar tags are stored so no suggestions can be made
-        return null;
+    @Override
+    protected Set<String> getAllTags() {
+        return recipes.getTags();
+    }
+
+    @Override
+    protected void setSource(String name, RecipeSnapshot.Source source) {
+        sources.put(name, source);
     }
 }
@@ -0,0 +1,178 @@
+import recipeInfo.Recipe;
+import recipeInfo.RecipeHeader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Bulk importer for recipe files.
+ * Parses files concurrently on a pool with one thread per core, and hands back everything that was parsed so the
+ * caller can merge it into the RecipeBook in one go.
+ * Bundle files are streamed recipe by recipe, and a bad recipe in a bundle doesn't stop the rest being read.
+ * An importer can parse just the headers of recipe files, leaving each recipe's ingredients and method in its
+ * file until the recipe is opened, which is much quicker for indexing a large library. Bundles are always parsed
+ * whole.
+ */
+public class RecipeImporter {
+	private final int threads;
+	private final boolean headersOnly;
+
+	public RecipeImporter() {
+		this(false);
+	}
+
+	/**
+	 * @param headersOnly   true to parse only the header of each recipe file
+	 */
+	public RecipeImporter(boolean headersOnly) {
+		this(Runtime.getRuntime().availableProcessors(), headersOnly);
+	}
+
+	public RecipeImporter(int threads, boolean headersOnly) {
+		this.threads = Math.max(1, threads);
+		this.headersOnly = headersOnly;
+	}
+
+	/**
+	 * Parse every file given concurrently.
+	 * @param files File to parse
+	 * @param progress  Called from the worker threads with the number of files finished so far
+	 * @return  the recipes parsed, in the same order as the files, and a message for every file that failed or
+	 * bundle with recipes that failed
+	 * @throws InterruptedException if the calling thread is interrupted, which cancels any unfinished files
+	 */
+	public Result importFiles(List<File> files, IntConsumer progress) throws InterruptedException {
+		return importFiles(files, progress, null);
+	}
+
+	/**
+	 * Parse every file given concurrently, handing each recipe over as soon as it's parsed rather than keeping it
+	 * for the result, so a large import can be shown as it goes.
+	 * @param files File to parse
+	 * @param progress  Called from the worker threads with the number of files finished so far
+	 * @param onParsed  Called from the worker threads with each recipe parsed and the file it came from, in no
+	 *                  particular order, or null to keep the recipes in the result
+	 * @return  the recipes parsed if they weren't handed over, and a message for every file that failed or bundle
+	 * with recipes that failed
+	 * @throws InterruptedException if the calling thread is interrupted, which cancels any unfinished files
+	 */
+	public Result importFiles(List<File> files, IntConsumer progress,
+							  BiConsumer<RecipeHeader, RecipeSnapshot.Source> onParsed) throws InterruptedException {
+		List<List<RecipeHeader>> parsed = new ArrayList<>(Collections.nCopies(files.size(), null));
+		RecipeSnapshot.Source[] sources = new RecipeSnapshot.Source[files.size()];
+		String[] errors = new String[files.size()];
+		AtomicInteger finished = new AtomicInteger();
+		RecipeParser parser = new RecipeParser();
+
+		List<Callable<Void>> tasks = new ArrayList<>(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			int index = i;
+			tasks.add(() -> {
+				try {
+					File file = files.get(index);
+					sources[index] = RecipeSnapshot.Source.of(file); //before reading, so later edits show
+					List<RecipeHeader> kept = new ArrayList<>(1);
+					Consumer<RecipeHeader> out = onParsed == null ? kept::add : h -> onParsed.accept(h, sources[index]);
+					if (RecipeBundleReader.isBundle(file)) {
+						readBundle(file, out, errors, index);
+					} else if (headersOnly) {
+						out.accept(parser.parseHeaderFromFile(sources[index]));
+					} else {
+						out.accept(RecipeHeader.of(parser.parseRecipeFromFile(file)));
+					}
+					if (onParsed == null) { parsed.set(index, kept); }
+				} catch (FileNotFoundException e) {
+					errors[index] = "File not found";
+				} catch (Throwable t) {
+					errors[index] = String.valueOf(t.getMessage());
+				}
+				progress.accept(finished.incrementAndGet());
+				return null;
+			});
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "recipe-import");
+			t.setDaemon(true); //never hold the program open
+			return t;
+		});
+		try {
+			pool.invokeAll(tasks); //cancels whatever hasn't run yet if we're interrupted
+		} finally {
+			pool.shutdownNow();
+		}
+
+		Result result = new Result();
+		for (int i = 0; i < parsed.size(); i++) {
+			if (parsed.get(i) != null) {
+				for (RecipeHeader r : parsed.get(i)) {
+					result.headers.add(r);
+					result.sources.add(sources[i]);
+				}
+			}
+			if (errors[i] != null) { result.failures.put(files.get(i), errors[i]); }
+		}
+		return result;
+	}
+
+	/**
+	 * Stream every recipe out of a bundle, noting the ones which fail.
+	 */
+	private static void readBundle(File file, Consumer<RecipeHeader> out, String[] errors, int index) throws IOException {
+		StringBuilder failed = new StringBuilder();
+		try (RecipeBundleReader reader = RecipeBundleReader.open(file)) {
+			while (reader.hasNext()) {
+				try {
+					out.accept(RecipeHeader.of(reader.next()));
+				} catch (IllegalArgumentException e) {
+					if (failed.length() > 0) { failed.append("; "); }
+					failed.append(e.getMessage());
+				}
+				if (Thread.currentThread().isInterrupted()) { break; } //cancelled
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if (failed.length() > 0) { errors[index] = failed.toString(); }
+	}
+
+	/**
+	 * Everything produced by an import.
+	 */
+	public static class Result {
+		private final List<RecipeHeader> headers = new ArrayList<>();
+		private final List<RecipeSnapshot.Source> sources = new ArrayList<>();
+		private final LinkedHashMap<File, String> failures = new LinkedHashMap<>();
+
+		public List<RecipeHeader> getHeaders() { return headers; }
+
+		/**
+		 * @return  every recipe parsed, loading the rest of each one if only its header was parsed
+		 */
+		public List<Recipe> getRecipes() {
+			List<Recipe> recipes = new ArrayList<>(headers.size());
+			for (RecipeHeader h : headers) { recipes.add(h.getRecipe()); }
+			return recipes;
+		}
+
+		/**
+		 * @return  the file each recipe was parsed from, in the same order as the headers
+		 */
+		public List<RecipeSnapshot.Source> getSources() { return sources; }
+
+		public LinkedHashMap<File, String> getFailures() { return failures; }
+	}
+}
@@ -0,0 +1,422 @@
+import recipeInfo.Recipe;
+import recipeInfo.RecipeHeader;
+import recipeInfo.RecipeCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of recipes added to the book, so new recipes are safe on disk as soon as they are saved
+ * without rewriting the snapshot or the library.
+ * Each recipe added is one record: an int payload length, the CRC32 of the payload, then the payload. Records from any
+ * number of threads are queued and a single writer thread appends everything waiting in one write followed by one
+ * fsync, so saving many recipes in a row costs a few disk flushes rather than one each.
+ * On startup the records are replayed over the snapshot. A crash part way through an append leaves a record which
+ * is short or fails its checksum, and everything from there on is cut off. Once the journal grows large it is
+ * compacted: the file is set aside as <file>.old and appends carry on into a fresh one while the caller saves the
+ * whole book, then the old file is deleted. If the save fails the old file is kept, and replayed before the
+ * current one, and the next compaction adds the current one's records to it.
+ *
+ * A recipe read from a file is recorded as a FILE record, holding only its name and where it came from, to be
+ * parsed from the file again on replay, so importing a large folder doesn't copy every recipe into the journal.
+ * Only recipes with no file, such as ones made in the form, are recorded whole.
+ *
+ * Payload layout, big endian: type byte, then for ADD the RecipeCodec version byte and the recipe encoded by a
+ * streaming RecipeCodec of its own, so each record decodes alone, or for FILE the name, then the path, modified
+ * long and length long of the file, where each string is a length int and UTF-8 bytes.
+ */
+public class RecipeJournal {
+	public static final byte ADD = 1;
+	public static final byte FILE = 2;
+
+	private static final int COMPACT_BYTES = 4 << 20;
+
+	private final File file;
+	private final File old; //records set aside for a compaction which hasn't finished
+	private final Object compactLock = new Object();
+	private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+	private FileChannel channel;
+	private volatile Thread writer; //null until opened and once closed
+	private volatile long size;
+
+	public RecipeJournal(File file) {
+		this.file = file;
+		this.old = new File(file.getPath() + ".old");
+	}
+
+	/**
+	 * Read every complete record, from any file left by an unfinished compaction and then the journal itself,
+	 * cutting off any damaged tail, then open the journal for appending.
+	 * Must be called once, before anything is appended.
+	 * @return  the changes recorded, in the order they were made
+	 * @throws IOException if the journal can't be read or opened
+	 */
+	public List<Entry> open() throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		if (old.exists()) {
+			try (FileChannel oldChannel = FileChannel.open(old.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				read(oldChannel, entries);
+			}
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		size = read(channel, entries);
+		channel.position(size);
+
+		writer = new Thread(this::writeLoop, "recipe-journal");
+		writer.setDaemon(true); //close() flushes anything left
+		writer.start();
+		return entries;
+	}
+
+	/**
+	 * Read every complete record in a journal file and cut off any damaged tail.
+	 * @return  length of the records kept
+	 */
+	private static int read(FileChannel channel, List<Entry> entries) throws IOException {
+		ByteBuffer in = ByteBuffer.allocate((int) channel.size());
+		while (in.hasRemaining() && channel.read(in, in.position()) >= 0) { }
+		in.flip();
+
+		CRC32 crc = new CRC32();
+		int valid = 0;
+		while (in.remaining() >= 8) {
+			int length = in.getInt();
+			int checksum = in.getInt();
+			if (length <= 0 || length > in.remaining()) { break; } //torn append
+			crc.reset();
+			crc.update(in.array(), in.position(), length);
+			if ((int) crc.getValue() != checksum) { break; }
+			ByteBuffer payload = in.slice(in.position(), length);
+			try {
+				entries.add(decode(payload));
+			} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+				break;
+			}
+			in.position(in.position() + length);
+			valid = in.position();
+		}
+		if (valid < channel.size()) {
+			channel.truncate(valid);
+			channel.force(true);
+		}
+		return valid;
+	}
+
+	/**
+	 * Record recipes being added, by their file where they have one, so only the others are loaded.
+	 * @param recipes   Recipes added
+	 * @param sources   File each recipe came from, null where there isn't one
+	 * @return  completes once the records are on disk
+	 */
+	public CompletableFuture<Void> add(List<RecipeHeader> recipes, List<RecipeSnapshot.Source> sources) {
+		List<byte[]> records = new ArrayList<>(recipes.size());
+		for (int i = 0; i < recipes.size(); i++) {
+			RecipeHeader r = recipes.get(i);
+			RecipeSnapshot.Source source = sources.get(i);
+			records.add(source == null ? encode(ADD, r.getRecipe(), null, null) : encode(FILE, null, source, r.getName()));
+		}
+		return append(records);
+	}
+
+	/**
+	 * @return  true if the journal has been opened and not closed, so appends reach the disk
+	 */
+	public boolean isOpen() {
+		return writer != null;
+	}
+
+	/**
+	 * Queue records for the writer thread, or fail them at once if there isn't one to write them.
+	 */
+	private synchronized CompletableFuture<Void> append(List<byte[]> records) {
+		Pending p = new Pending(records);
+		if (writer == null) {
+			p.done.completeExceptionally(new IOException("The journal isn't open"));
+		} else {
+			queue.add(p);
+		}
+		return p.done;
+	}
+
+	/**
+	 * Check whether anything needs saving, waiting for records still being written first.
+	 * @return  true if nothing has been recorded since the last compaction finished
+	 * @throws IOException if writing failed
+	 */
+	public boolean isEmpty() throws IOException {
+		flush();
+		return size == 0 && !old.exists();
+	}
+
+	/**
+	 * @return  true once the journal is big enough that replaying it costs more than saving the book
+	 */
+	public boolean needsCompaction() {
+		return size > COMPACT_BYTES;
+	}
+
+	/**
+	 * Fold the journal into a full save and start it again empty.
+	 * Everything appended so far is set aside first, and appends made while the save runs go to a fresh file, so
+	 * they don't wait for it. Those changes may end up in both the save and the fresh file, which is harmless as
+	 * replaying a change twice has the same result as once.
+	 * @param save  Saves everything the journal held when this was called, e.g. by writing the snapshot
+	 * @throws IOException if the journal isn't open, or setting it aside or saving fails, in which case the records
+	 * set aside are kept
+	 */
+	public void compact(IORunnable save) throws IOException {
+		synchronized (compactLock) {
+			Pending rotate;
+			synchronized (this) {
+				if (writer == null) { throw new IOException("The journal isn't open"); }
+				rotate = new Pending(List.of());
+				rotate.rotate = true;
+				queue.add(rotate);
+			}
+			await(rotate.done);
+			save.run();
+			Files.deleteIfExists(old.toPath());
+		}
+	}
+
+	/**
+	 * Wait until everything appended so far is on disk.
+	 * @throws IOException if writing failed
+	 */
+	public void flush() throws IOException {
+		await(append(List.of()));
+	}
+
+	/**
+	 * Flush everything appended and stop the writer thread. Anything appended afterwards fails.
+	 * @throws IOException if writing failed
+	 */
+	public synchronized void close() throws IOException {
+		if (writer == null) { return; }
+		try {
+			flush(); //nothing more can be queued while this holds the append lock
+		} finally {
+			writer.interrupt();
+			writer = null;
+			channel.close();
+		}
+	}
+
+	private void await(CompletableFuture<Void> f) throws IOException {
+		try {
+			f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for the journal", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Append whatever is waiting in one write and one fsync, then complete every waiting future together.
+	 * A rotation part way through the group writes what comes before it to the file being set aside first.
+	 */
+	private void writeLoop() {
+		List<Pending> group = new ArrayList<>();
+		while (true) {
+			try {
+				group.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(group);
+			try {
+				int bytes = 0;
+				for (Pending p : group) {
+					for (byte[] r : p.records) { bytes += r.length; }
+				}
+				ByteBuffer out = ByteBuffer.allocate(bytes);
+				for (Pending p : group) {
+					if (p.rotate) {
+						write(out);
+						rotate();
+					}
+					for (byte[] r : p.records) { out.put(r); }
+				}
+				write(out);
+				group.forEach(p -> p.done.complete(null));
+			} catch (IOException e) {
+				group.forEach(p -> p.done.completeExceptionally(e));
+			}
+			group.clear();
+		}
+	}
+
+	/**
+	 * Write and sync everything put in the buffer so far, leaving it empty.
+	 */
+	private void write(ByteBuffer out) throws IOException {
+		out.flip();
+		if (out.hasRemaining()) {
+			while (out.hasRemaining()) { channel.write(out); }
+			channel.force(false);
+		}
+		out.clear();
+		size = channel.position();
+	}
+
+	/**
+	 * Set the journal file aside for a compaction and start a fresh one. If a file is still set aside from a
+	 * compaction which failed, the journal's records are added to it instead, as the next save needs them all.
+	 * Either way the journal is open again afterwards, holding its old records only if they couldn't be set aside.
+	 */
+	private void rotate() throws IOException {
+		channel.close();
+		boolean setAside = false;
+		try {
+			if (old.exists()) {
+				try (FileChannel from = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					 FileChannel to = FileChannel.open(old.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+					long done = 0;
+					while (done < from.size()) { done += from.transferTo(done, from.size() - done, to); }
+					to.force(true);
+				}
+			} else {
+				Files.move(file.toPath(), old.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			setAside = true;
+		} finally {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if (setAside) { channel.truncate(0); }
+			channel.position(channel.size());
+			size = channel.size();
+		}
+	}
+
+	/**
+	 * Build a whole record, header included.
+	 */
+	private static byte[] encode(byte type, Recipe r, RecipeSnapshot.Source source, String name) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0); //length and checksum are filled in below
+			out.writeInt(0);
+			out.writeByte(type);
+			if (type == FILE) {
+				writeString(out, name);
+				writeString(out, source.getFile().getPath());
+				out.writeLong(source.getModified());
+				out.writeLong(source.getLength());
+			} else {
+				out.writeByte(RecipeCodec.VERSION);
+				out.write(new RecipeCodec().encode(r));
+			}
+			ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+			CRC32 crc = new CRC32();
+			crc.update(record.array(), 8, record.capacity() - 8);
+			record.putInt(0, record.capacity() - 8);
+			record.putInt(4, (int) crc.getValue());
+			return record.array();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); //can't happen writing to memory
+		}
+	}
+
+	private static Entry decode(ByteBuffer in) {
+		byte type = in.get();
+		if (type == FILE) {
+			String name = readString(in);
+			return new Entry(type, null, new RecipeSnapshot.Source(new File(readString(in)), in.getLong(), in.getLong()), name);
+		}
+		if (type != ADD) { throw new IllegalArgumentException("Unknown record type " + type); }
+		int version = in.get();
+		if (version != RecipeCodec.VERSION) { throw new IllegalArgumentException("Unsupported recipe encoding " + version); }
+		Recipe recipe = new RecipeCodec().decode(in);
+		return new Entry(type, recipe, null, recipe.getName());
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return s;
+	}
+
+	/**
+	 * Records waiting to be written, and the future completed once they are.
+	 */
+	private static final class Pending {
+		private final List<byte[]> records;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		private boolean rotate; //set the file aside before writing these records
+
+		private Pending(List<byte[]> records) {
+			this.records = records;
+		}
+	}
+
+	/**
+	 * A save run during compaction.
+	 */
+	public interface IORunnable {
+		void run() throws IOException;
+	}
+
+	/**
+	 * One recipe added, read back from the journal.
+	 */
+	public static class Entry {
+		private final byte type;
+		private final Recipe recipe;
+		private final RecipeSnapshot.Source source;
+		private final String name;
+
+		private Entry(byte type, Recipe recipe, RecipeSnapshot.Source source, String name) {
+			this.type = type;
+			this.recipe = recipe;
+			this.source = source;
+			this.name = name;
+		}
+
+		/**
+		 * @return  ADD or FILE
+		 */
+		public byte getType() { return type; }
+
+		/**
+		 * @return  the recipe added, null for a recipe to be parsed from its file
+		 */
+		public Recipe getRecipe() { return recipe; }
+
+		/**
+		 * @return  the file to parse the recipe from, null if it was recorded whole
+		 */
+		public RecipeSnapshot.Source getSource() { return source; }
+
+		/**
+		 * @return  name of the recipe added
+		 */
+		public String getName() { return name; }
+	}
+}
@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Hand written tokenizer for the recipe file language.
+ * Works directly on the raw bytes of a file, splitting tokens on whitespace and matching the literal tokens
+ * and numbers of the language without any regex matching.
+ * The bytes can either all be in memory up front, or streamed through a fixed size window which is refilled as
+ * it runs out, keeping only the token or sequence being read.
+ */
+class RecipeLexer {
+	static final byte[] OPEN = literal("(");
+	static final byte[] CLOSE = literal(")");
+	static final byte[] START = literal("<start>");
+	static final byte[] STOP = literal("<stop>");
+	static final byte[] STEP = literal("#");
+	static final byte[] TAG_OPEN = literal("<tagOpen>");
+	static final byte[] TAG_CLOSE = literal("<tagClose>");
+	static final byte[] COMMA = literal(",");
+	static final byte[] COLON = literal(":");
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private static final int WINDOW = 1 << 16;
+
+	private final InputStream in; //null when every byte is already in buf
+	private final Charset charset;
+	private byte[] buf;
+	private int limit;
+	private int pos;
+	private int tokenStart;
+	private int tokenEnd;
+	private int mark = -1; //start of the sequence being read, kept through refills
+
+	RecipeLexer(byte[] buf, int offset, int length) {
+		this.in = null;
+		this.buf = buf;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.charset = Charset.defaultCharset(); //same charset Scanner would have decoded the file with
+	}
+
+	/**
+	 * Lexer which streams its input, so only a window of it is ever in memory.
+	 * @param in    Stream to read, read errors are thrown as UncheckedIOException
+	 */
+	RecipeLexer(InputStream in) {
+		this.in = in;
+		this.buf = new byte[WINDOW];
+		this.charset = Charset.defaultCharset();
+	}
+
+	/**
+	 * Read more input into the window, first moving the bytes still needed to its start, and growing it if
+	 * they fill it.
+	 * @param keepFrom  First byte which is still needed
+	 * @return  false if there is no more input
+	 */
+	private boolean fill(int keepFrom) {
+		if (in == null) { return false; }
+		if (mark != -1) { keepFrom = Math.min(keepFrom, mark); }
+		int kept = limit - keepFrom;
+		if (kept > buf.length / 2) { buf = Arrays.copyOf(buf, buf.length * 2); } //keep reads a useful size
+		System.arraycopy(buf, keepFrom, buf, 0, kept);
+		pos -= keepFrom;
+		tokenStart -= keepFrom;
+		tokenEnd -= keepFrom;
+		if (mark != -1) { mark -= keepFrom; }
+		limit = kept;
+		try {
+			int read = in.read(buf, limit, buf.length - limit);
+			if (read <= 0) { return false; }
+			limit += read;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return  true if there are no more tokens
+	 */
+	boolean atEnd() {
+		while (true) {
+			while (pos < limit && isWhitespace(buf[pos])) { pos++; }
+			if (pos < limit) { return false; }
+			if (!fill(pos)) { return true; }
+		}
+	}
+
+	private static byte[] literal(String s) { return s.getBytes(StandardCharsets.US_ASCII); }
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+	}
+
+	/**
+	 * Move on to the next whitespace separated token.
+	 * @return false if the end of the input was reached before another token
+	 */
+	boolean advance() {
+		if (atEnd()) { return false; }
+		tokenStart = pos;
+		while (true) {
+			while (pos < limit && !isWhitespace(buf[pos])) { pos++; }
+			if (pos < limit || !fill(tokenStart)) { break; }
+		}
+		tokenEnd = pos;
+		return true;
+	}
+
+	/**
+	 * Skip tokens up to and including the next one matching a literal, to get back in step after an error.
+	 * @param literal   Token to skip to
+	 * @return  false if the input ended first
+	 */
+	boolean skipPast(byte[] literal) {
+		mark = -1;
+		while (advance()) {
+			if (tokenIs(literal)) { return true; }
+		}
+		return false;
+	}
+
+	/**
+	 * Skip tokens up to and including the terminator, checking only that it's there, so nothing is built for them.
+	 * @param terminator    Token that ends the skipped sequence
+	 */
+	void skipSequence(byte[] terminator) {
+		do {
+			next();
+		} while (!tokenIs(terminator));
+	}
+
+	/**
+	 * @return  position in the input just after the current token, for lexers over bytes already in memory
+	 */
+	int tokenEnd() {
+		return tokenEnd;
+	}
+
+	/**
+	 * Move on to the next token, failing if there isn't one.
+	 */
+	void next() {
+		if (!advance()) { throw new IllegalArgumentException("Unexpected end of file"); }
+	}
+
+	/**
+	 * Check whether the current token is the given literal.
+	 * @param literal   Literal token to compare against
+	 * @return  true if the token matches exactly
+	 */
+	boolean tokenIs(byte[] literal) {
+		if (tokenEnd - tokenStart != literal.length) { return false; }
+		for (int i = 0; i < literal.length; i++) {
+			if (buf[tokenStart + i] != literal[i]) { return false; }
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next token and throw an error if it isn't the expected one.
+	 * @param expected  Expected token
+	 */
+	void expect(byte[] expected) {
+		next();
+		if (!tokenIs(expected)) { throw new IllegalArgumentException("Bad Format"); }
+	}
+
+	/**
+	 * @return the current token as a String
+	 */
+	String token() {
+		return new String(buf, tokenStart, tokenEnd - tokenStart, charset);
+	}
+
+	/**
+	 * Read the next token as an integer, with an optional sign.
+	 * @return  parsed int
+	 */
+	int nextInt() {
+		next();
+		int i = tokenStart;
+		boolean negative = buf[i] == '-';
+		if (negative || buf[i] == '+') { i++; }
+		if (i == tokenEnd) { throw new IllegalArgumentException("Bad Format"); }
+		long value = 0;
+		for (; i < tokenEnd; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9) { throw new IllegalArgumentException("Bad Format"); }
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) { throw new IllegalArgumentException("Bad Format"); }
+		}
+		if (negative) { value = -value; }
+		if (value > Integer.MAX_VALUE) { throw new IllegalArgumentException("Bad Format"); }
+		return (int) value;
+	}
+
+	/**
+	 * Read the next token as a double.
+	 * Plain decimals short enough to be exact are converted directly, anything else is handed to Double.parseDouble.
+	 * @return  parsed double
+	 */
+	double nextDouble() {
+		next();
+		int i = tokenStart;
+		boolean negative = buf[i] == '-';
+		if (negative || buf[i] == '+') { i++; }
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < tokenEnd; i++) {
+			byte b = buf[i];
+			if (b == '.' && fractionDigits == -1) {
+				fractionDigits = 0;
+				continue;
+			}
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || digits == 15) { return parseDoubleSlow(); }
+			mantissa = mantissa * 10 + digit;
+			digits++;
+			if (fractionDigits != -1) { fractionDigits++; }
+		}
+		if (digits == 0) { throw new IllegalArgumentException("Bad Format"); }
+		//both values are exact doubles, so a single division is correctly rounded
+		double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+		return negative ? -value : value;
+	}
+
+	private double parseDoubleSlow() {
+		try {
+			return Double.parseDouble(token());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad Format");
+		}
+	}
+
+	/**
+	 * Read tokens up to the terminator and join them with single spaces.
+	 * @param terminator    Token that ends the sequence, consumed but not included
+	 * @return  the joined sequence
+	 */
+	String readSequence(byte[] terminator) {
+		int length = -1; //bytes from the mark to the end of the last token, which refills don't change
+		boolean singleSpaced = true;
+		try {
+			while (true) {
+				next();
+				if (tokenIs(terminator)) { break; }
+				if (mark == -1) {
+					mark = tokenStart;
+				} else if (tokenStart - (mark + length) != 1 || buf[mark + length] != ' ') {
+					singleSpaced = false;
+				}
+				length = tokenEnd - mark;
+			}
+		} catch (RuntimeException e) {
+			mark = -1;
+			throw e;
+		}
+		if (mark == -1) { return ""; }
+		int start = mark;
+		int end = mark + length;
+		mark = -1;
+		if (singleSpaced) { return new String(buf, start, end - start, charset); }
+
+		//re-walk the range, collapsing each run of whitespace to a single space
+		StringBuilder b = new StringBuilder(end - start);
+		int i = start;
+		while (i < end) {
+			int j = i;
+			while (j < end && !isWhitespace(buf[j])) { j++; }
+			if (b.length() > 0) { b.append(' '); }
+			b.append(new String(buf, i, j - i, charset));
+			while (j < end && isWhitespace(buf[j])) { j++; }
+			i = j;
+		}
+		return b.toString();
+	}
+}
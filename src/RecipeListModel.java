@@ -0,0 +1,123 @@
+import recipeInfo.index.NameIndex;
+
+import javax.swing.AbstractListModel;
+import java.util.Arrays;
+
+/**
+ * List model showing the names of the recipes in a RecipeBook, read straight from the book rather than copied.
+ * The model shows as many recipes as the book held at the last refresh, so rows added since only appear, and are
+ * only announced to the list, when refresh is called. Must only be used on the event thread.
+ * The list can be filtered to the recipes whose names contain some text, found through a NameIndex of every name
+ * shown, and each keystroke which extends the filter only narrows the rows already shown.
+ */
+public class RecipeListModel extends AbstractListModel<String> {
+	private static final long serialVersionUID = 1L;
+
+	private final RecipeBook book;
+	private int shown;
+	private NameIndex names = new NameIndex();
+	private String filter = "";
+	private int[] matches; //ordinals shown while filtering, null when not
+	private int matchCount;
+
+	public RecipeListModel(RecipeBook book) {
+		this.book = book;
+		this.shown = book.size();
+		for (int i = 0; i < shown; i++) { names.add(book.getHeaderAt(i).getName()); }
+	}
+
+	@Override
+	public int getSize() {
+		return matches == null ? shown : matchCount;
+	}
+
+	@Override
+	public String getElementAt(int index) {
+		return book.getHeaderAt(getOrdinalAt(index)).getName();
+	}
+
+	/**
+	 * @param index Row in the list
+	 * @return  ordinal in the book of the recipe shown in that row
+	 */
+	public int getOrdinalAt(int index) {
+		return matches == null ? index : matches[index];
+	}
+
+	/**
+	 * @param ordinal   Ordinal in the book of a recipe
+	 * @return  row the recipe is shown in, or -1 if it isn't shown
+	 */
+	public int getRowOf(int ordinal) {
+		if (ordinal < 0 || ordinal >= shown) { return -1; }
+		if (matches == null) { return ordinal; }
+		int row = Arrays.binarySearch(matches, 0, matchCount, ordinal); //matches are in ordinal order
+		return row < 0 ? -1 : row;
+	}
+
+	/**
+	 * Catch up with the book, telling the list only about the rows added since the last refresh.
+	 * If the book has shrunk, recipes after a removed one have moved up, so every row left is reported changed.
+	 */
+	public void refresh() {
+		int size = book.size();
+		if (size > shown) {
+			int first = shown;
+			for (int i = first; i < size; i++) { names.add(book.getHeaderAt(i).getName()); }
+			shown = size;
+			if (matches == null) {
+				fireIntervalAdded(this, first, size - 1);
+				return;
+			}
+			int firstRow = matchCount;
+			for (int ordinal : names.searchFrom(filter, first)) {
+				if (matchCount == matches.length) { matches = Arrays.copyOf(matches, matchCount * 2 + 1); }
+				matches[matchCount++] = ordinal;
+			}
+			if (matchCount > firstRow) { fireIntervalAdded(this, firstRow, matchCount - 1); }
+		} else if (size < shown) {
+			int oldRows = getSize();
+			shown = size;
+			names = new NameIndex();
+			for (int i = 0; i < size; i++) { names.add(book.getHeaderAt(i).getName()); }
+			if (matches != null) {
+				matches = names.search(filter, null);
+				matchCount = matches.length;
+			}
+			rowsChanged(oldRows);
+		}
+	}
+
+	/**
+	 * Show only the recipes whose names contain some text, ignoring case.
+	 * @param text  Text to filter by, empty to show every recipe
+	 */
+	public void setFilter(String text) {
+		int oldRows = getSize();
+		if (text.isEmpty()) {
+			matches = null;
+		} else {
+			//a filter which extends the last one can only match recipes which matched that one
+			int[] narrowing = matches == null || !text.contains(filter) ? null
+					: matchCount == matches.length ? matches : Arrays.copyOf(matches, matchCount);
+			matches = names.search(text, narrowing);
+			matchCount = matches.length;
+		}
+		filter = text;
+		rowsChanged(oldRows);
+	}
+
+	/**
+	 * Tell the list every row may have changed, and how many there are now.
+	 */
+	private void rowsChanged(int oldRows) {
+		int rows = getSize();
+		if (rows < oldRows) {
+			fireIntervalRemoved(this, rows, oldRows - 1);
+		} else if (rows > oldRows) {
+			fireIntervalAdded(this, oldRows, rows - 1);
+		}
+		int kept = Math.min(rows, oldRows);
+		if (kept > 0) { fireContentsChanged(this, 0, kept - 1); }
+	}
+}
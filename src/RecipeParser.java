@@ -1,16 +1,26 @@
 import recipeInfo.Recipe;
+import recipeInfo.RecipeHeader;
 import recipeInfo.recipeContents.*;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Scanner;
 
 /**
  * In and out parser for recipe files.
  * Reads files in and creates Recipe objects from valid ones.
+ * Files are read into memory in one go and tokenized by a RecipeLexer, rather than through a Scanner.
+ * Bundles holding many recipes are streamed instead, through a RecipeBundleReader.
+ * For indexing, a file can be parsed header first, which skips over the ingredients and method and parses them
+ * later from where they are in the file, only if the recipe is opened.
  * Utilizes the toFileFormat() method in Recipe to parse out to a file.
  */
 public class RecipeParser {
@@ -20,49 +30,129 @@ public class RecipeParser {
 	 * @param recipeFile    File to parse
 	 * @return  a Recipe object of file
 	 * @throws FileNotFoundException    If file is invalid
+	 * @throws IOException  If file can't be read
 	 */
-	public Recipe parseRecipeFromFile(File recipeFile) throws FileNotFoundException {
-		Scanner scanner = new Scanner(recipeFile);
-		scanner.useDelimiter("\\s+");
+	public Recipe parseRecipeFromFile(File recipeFile) throws IOException {
+		byte[] contents;
+		try (FileInputStream in = new FileInputStream(recipeFile)) {
+			contents = in.readAllBytes();
+		}
+		return parseRecipe(contents, 0, contents.length);
+	}
 
-		String title = parseLetterSeqIn(scanner);
+	/**
+	 * Parse just the header of a recipe file: its title, info and tags.
+	 * The ingredient and method blocks are checked and skipped without building anything, and where they are in
+	 * the file is kept, so the rest of the recipe is parsed from the file each time it's asked for.
+	 * @param recipeFile    File to parse
+	 * @return  header of the recipe in the file
+	 * @throws FileNotFoundException    If file is invalid
+	 * @throws IOException  If file can't be read
+	 */
+	public RecipeHeader parseHeaderFromFile(File recipeFile) throws IOException {
+		return parseHeaderFromFile(RecipeSnapshot.Source.of(recipeFile)); //before reading, so later edits show
+	}
 
-		InfoBlock info = parseInfoBlock(scanner);
+	/**
+	 * Parse just the header of a recipe file, which has already been stamped.
+	 * @param source    File to parse, as it was just before being read
+	 * @return  header of the recipe in the file
+	 * @throws FileNotFoundException    If file is invalid
+	 * @throws IOException  If file can't be read
+	 */
+	public RecipeHeader parseHeaderFromFile(RecipeSnapshot.Source source) throws IOException {
+		byte[] contents;
+		try (FileInputStream in = new FileInputStream(source.getFile())) {
+			contents = in.readAllBytes();
+		}
+		RecipeLexer lexer = new RecipeLexer(contents, 0, contents.length);
+		String title = parseLetterSeqIn(lexer);
+		InfoBlock info = parseInfoBlock(lexer);
+		int bodyStart = lexer.tokenEnd();
+		skipIngredientBlock(lexer);
+		skipMethod(lexer);
+		int bodyLength = lexer.tokenEnd() - bodyStart;
+		ArrayList<String> tags = parseTags(lexer);
+		return new RecipeHeader(title, info, tags, header -> parseBody(source, bodyStart, bodyLength, header));
+	}
 
-		ArrayList<Ingredient> ingredients = parseIngredientBlock(scanner);
+	/**
+	 * Parse the ingredients and method of a recipe whose header was parsed earlier.
+	 * If the file has changed since, the whole file is parsed again instead, as long as it still holds a recipe with
+	 * the header's name, which the book knows the recipe by.
+	 * @param source    File the header was parsed from, as it was then
+	 * @param offset    Where the ingredient block starts in the file
+	 * @param length    Number of bytes up to the end of the method
+	 * @param header    Header parsed from the file
+	 * @return  the whole recipe
+	 * @throws IllegalStateException if the file can no longer be read or parsed
+	 */
+	private Recipe parseBody(RecipeSnapshot.Source source, int offset, int length, RecipeHeader header) {
+		try {
+			if (!source.isCurrent()) {
+				Recipe r = parseRecipeFromFile(source.getFile());
+				if (!r.getName().equals(header.getName())) {
+					throw new IllegalStateException(source.getFile() + " now holds " + r.getName() + " rather than " + header.getName());
+				}
+				return r;
+			}
+			byte[] body = new byte[length];
+			try (RandomAccessFile in = new RandomAccessFile(source.getFile(), "r")) {
+				in.seek(offset);
+				in.readFully(body);
+			}
+			RecipeLexer lexer = new RecipeLexer(body, 0, length);
+			ArrayList<Ingredient> ingredients = parseIngredientBlock(lexer);
+			return new Recipe(ingredients, parseMethod(lexer), header.getName(), header.getInfo(), header.getTags());
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalStateException("Can't load the rest of " + header.getName() + " from " + source.getFile(), e);
+		}
+	}
+
+	/**
+	 * Parse a recipe from a region of a byte array.
+	 * @param contents  Bytes holding the recipe
+	 * @param offset    Where the recipe starts
+	 * @param length    Number of bytes to read
+	 * @return  a Recipe object of the content
+	 */
+	public Recipe parseRecipe(byte[] contents, int offset, int length) {
+		return parseRecipe(new RecipeLexer(contents, offset, length));
+	}
+
+	/**
+	 * Parse the next recipe from a lexer, leaving it just after the recipe's last token.
+	 * @param lexer Lexer to read from
+	 * @return  a Recipe object of the content
+	 */
+	Recipe parseRecipe(RecipeLexer lexer) {
+		String title = parseLetterSeqIn(lexer);
 
-		Method method = parseMethod(scanner);
+		InfoBlock info = parseInfoBlock(lexer);
 
-		ArrayList<String> tags = parseTags(scanner);
+		ArrayList<Ingredient> ingredients = parseIngredientBlock(lexer);
+
+		Method method = parseMethod(lexer);
+
+		ArrayList<String> tags = parseTags(lexer);
 
 		return new Recipe(ingredients, method, title, info, tags);
 	}
 
 	/**
-	 * Parse tags from scanner.
-	 * @param scanner   Scanner to read from
+	 * Parse tags from lexer.
+	 * @param lexer   Lexer to read from
 	 * @return  List of tags
 	 */
-	private ArrayList<String> parseTags(Scanner scanner) {
-		assertExpected(scanner,  "<tagOpen>");
+	private ArrayList<String> parseTags(RecipeLexer lexer) {
+		lexer.expect(RecipeLexer.TAG_OPEN);
 		ArrayList<String> tags = new ArrayList<>();
 		while (true) {
-			String next = scanner.next();
-			if (next.equals("<tagClose>")) {
+			lexer.next();
+			if (lexer.tokenIs(RecipeLexer.TAG_CLOSE)) {
 				break;
-			} else if (next.equals("(")) {
-				StringBuilder tag = new StringBuilder();
-				while (true) {
-					String token = scanner.next();
-					if (token.equals(")")) {
-						break;
-					}
-					if (!tag.toString().equals("")) {
-						tag.append(" ");
-					}
-					tag.append(token);
-				}
-				tags.add(tag.toString().toUpperCase());
+			} else if (lexer.tokenIs(RecipeLexer.OPEN)) {
+				tags.add(lexer.readSequence(RecipeLexer.CLOSE).toUpperCase());
 			} else {
 				throw new IllegalArgumentException("Incorrect Format");
 			}
@@ -72,19 +162,19 @@ public class RecipeParser {
 
 
 	/**
-	 * Parse the method from scanner.
-	 * @param scanner   Scanner to read from
+	 * Parse the method from lexer.
+	 * @param lexer   Lexer to read from
 	 * @return  a Method object containing parsed steps
 	 */
-	private Method parseMethod(Scanner scanner) {
-		assertExpected(scanner, "<start>");
+	private Method parseMethod(RecipeLexer lexer) {
+		lexer.expect(RecipeLexer.START);
 		Method m = new Method(new ArrayList<>());
 		while (true) {
-			String next = scanner.next();
-			if (next.equals("<stop>")) {
+			lexer.next();
+			if (lexer.tokenIs(RecipeLexer.STOP)) {
 				break;
-			} else if (next.equals("#")) {
-				m.addStep(parseStep(scanner));
+			} else if (lexer.tokenIs(RecipeLexer.STEP)) {
+				m.addStep(parseStep(lexer));
 			} else {
 				throw new IllegalArgumentException("Incorrect Format");
 			}
@@ -93,37 +183,48 @@ public class RecipeParser {
 	}
 
 	/**
-	 * Parses a step from scanner.
-	 * @param scanner   Scanner to read from
-	 * @return  A step object with parsed info
+	 * Check the method from lexer, without keeping it.
+	 * @param lexer   Lexer to read from
 	 */
-	private Step parseStep(Scanner scanner) {
-		int stepNum = scanner.nextInt();
-		StringBuilder step = new StringBuilder();
+	private void skipMethod(RecipeLexer lexer) {
+		lexer.expect(RecipeLexer.START);
 		while (true) {
-			String token = scanner.next();
-			if (token.equals("#")) { break; }
-			if (!step.toString().equals("")) { step.append(" "); }
-			step.append(token);
+			lexer.next();
+			if (lexer.tokenIs(RecipeLexer.STOP)) {
+				break;
+			} else if (lexer.tokenIs(RecipeLexer.STEP)) {
+				lexer.nextInt();
+				lexer.skipSequence(RecipeLexer.STEP);
+			} else {
+				throw new IllegalArgumentException("Incorrect Format");
+			}
 		}
+	}
 
-		return new Step(step.toString(), stepNum);
+	/**
+	 * Parses a step from lexer.
+	 * @param lexer   Lexer to read from
+	 * @return  A step object with parsed info
+	 */
+	private Step parseStep(RecipeLexer lexer) {
+		int stepNum = lexer.nextInt();
+		return new Step(lexer.readSequence(RecipeLexer.STEP), stepNum);
 	}
 
 	/**
-	 * Parses a block of ingredients from the scanner.
-	 * @param scanner   Scanner to read from
+	 * Parses a block of ingredients from the lexer.
+	 * @param lexer   Lexer to read from
 	 * @return  List of ingredients
 	 */
-	private ArrayList<Ingredient> parseIngredientBlock(Scanner scanner) {
-		assertExpected(scanner, "<start>");
+	private ArrayList<Ingredient> parseIngredientBlock(RecipeLexer lexer) {
+		lexer.expect(RecipeLexer.START);
 		ArrayList<Ingredient> ingredients = new ArrayList<>();
 		while (true) {
-			String next = scanner.next();
-			if (next.equals("<stop>")) {
+			lexer.next();
+			if (lexer.tokenIs(RecipeLexer.STOP)) {
 				break;
-			} else if (next.equals("(")) {
-				ingredients.add(parseIngredient(scanner));
+			} else if (lexer.tokenIs(RecipeLexer.OPEN)) {
+				ingredients.add(parseIngredient(lexer));
 			} else {
 				throw new IllegalArgumentException("Incorrect Format");
 			}
@@ -132,69 +233,80 @@ public class RecipeParser {
 	}
 
 	/**
-	 * Parse ingredient from scanner.
-	 * @param scanner   Scanner to read from
-	 * @return  a new Ingredient object with info
+	 * Check a block of ingredients from the lexer, without keeping them.
+	 * @param lexer   Lexer to read from
 	 */
-	private Ingredient parseIngredient(Scanner scanner) {
-		double amount = scanner.nextDouble();
-		String unit = scanner.next();
-		if (Measurement.convertToUnit(unit) == null) { throw new IllegalArgumentException("Bad Format"); }
-		StringBuilder ingredient = new StringBuilder();
+	private void skipIngredientBlock(RecipeLexer lexer) {
+		lexer.expect(RecipeLexer.START);
 		while (true) {
-			String token = scanner.next();
-			if (token.equals(")")) { break; }
-			if (!ingredient.toString().equals("")) { ingredient.append(" "); }
-			ingredient.append(token);
+			lexer.next();
+			if (lexer.tokenIs(RecipeLexer.STOP)) {
+				break;
+			} else if (lexer.tokenIs(RecipeLexer.OPEN)) {
+				lexer.nextDouble();
+				lexer.next();
+				if (Measurement.convertToUnit(lexer.token()) == null) { throw new IllegalArgumentException("Bad Format"); }
+				lexer.skipSequence(RecipeLexer.CLOSE);
+			} else {
+				throw new IllegalArgumentException("Incorrect Format");
+			}
 		}
-		return new Ingredient(amount, unit, ingredient.toString());
 	}
 
 	/**
-	 * Parse the info block from scanner
-	 * @param scanner   Scanner to read from
+	 * Parse ingredient from lexer.
+	 * @param lexer   Lexer to read from
+	 * @return  a new Ingredient object with info
+	 */
+	private Ingredient parseIngredient(RecipeLexer lexer) {
+		double amount = lexer.nextDouble();
+		lexer.next();
+		String unit = lexer.token();
+		if (Measurement.convertToUnit(unit) == null) { throw new IllegalArgumentException("Bad Format"); }
+		return new Ingredient(amount, unit, lexer.readSequence(RecipeLexer.CLOSE));
+	}
+
+	/**
+	 * Parse the info block from lexer
+	 * @param lexer   Lexer to read from
 	 * @return a new InfoBlock object
 	 */
-	private InfoBlock parseInfoBlock(Scanner scanner) {
-		int serves = scanner.nextInt();
-		assertExpected(scanner, ",");
-		int prepHour = scanner.nextInt();
-		assertExpected(scanner, ":");
-		Duration prep = Duration.ofHours(prepHour).plus(Duration.ofMinutes(scanner.nextInt()));
-		assertExpected(scanner, ",");
-		int cookHour = scanner.nextInt();
-		assertExpected(scanner, ":");
-		Duration cook = Duration.ofHours(cookHour).plus(Duration.ofMinutes(scanner.nextInt()));
+	private InfoBlock parseInfoBlock(RecipeLexer lexer) {
+		int serves = lexer.nextInt();
+		lexer.expect(RecipeLexer.COMMA);
+		int prepHour = lexer.nextInt();
+		lexer.expect(RecipeLexer.COLON);
+		Duration prep = Duration.ofHours(prepHour).plus(Duration.ofMinutes(lexer.nextInt()));
+		lexer.expect(RecipeLexer.COMMA);
+		int cookHour = lexer.nextInt();
+		lexer.expect(RecipeLexer.COLON);
+		Duration cook = Duration.ofHours(cookHour).plus(Duration.ofMinutes(lexer.nextInt()));
 		return new InfoBlock(prep, cook, serves);
 	}
 
 	/**
 	 * Parse a simple string sequence
-	 * @param scanner   Scanner to read from
+	 * @param lexer   Lexer to read from
 	 * @return  String which was parsed
 	 */
-	public String parseLetterSeqIn(Scanner scanner) {
-		assertExpected(scanner, "(");
-		StringBuilder letterSeq = new StringBuilder();
-		while (true) {
-			String token = scanner.next();
-			if (token.equals(")")) {
-				break;
-			}
-			if (!letterSeq.toString().equals("")) { letterSeq.append(" "); }
-			letterSeq.append(token);
-		}
-		return letterSeq.toString();
+	private String parseLetterSeqIn(RecipeLexer lexer) {
+		lexer.expect(RecipeLexer.OPEN);
+		return lexer.readSequence(RecipeLexer.CLOSE);
 	}
 
 	/**
-	 * Throws an error when token read wasn't expected one due to bad formatting
-	 * @param scanner    Scanner to read from
-	 * @param expected  Expected token
+	 * Write recipes back to back into a bundle file.
+	 * @param recipes   Recipes to write
+	 * @param file  File to write to
+	 * @throws IOException if the file can't be written
 	 */
-	public void assertExpected(Scanner scanner, String expected) {
-		String token = scanner.next();
-		if (!token.equals(expected)) { throw new IllegalArgumentException("Bad Format"); }
+	public void parseRecipesToBundle(Iterable<Recipe> recipes, File file) throws IOException {
+		try (BufferedWriter w = Files.newBufferedWriter(file.toPath(), Charset.defaultCharset())) {
+			for (Recipe r : recipes) {
+				w.write(r.toFileFormat());
+				w.newLine();
+			}
+		}
 	}
 
 	/**
@@ -211,4 +323,3 @@ public class RecipeParser {
 		p.close();
 	}
 }
-
@@ -0,0 +1,56 @@
+import recipeInfo.Recipe;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Compares parsing recipe files with RecipeParser against splitting them with a Scanner on "\\s+", as the parser
+ * used to. The Scanner only splits the text into tokens without building anything, so it's a lower bound on what
+ * the old parser cost. Made up recipes are written out in the text format and held in memory, so the disk isn't
+ * timed. Every recipe is checked to parse back to the same text format first, and the first rounds warm up the JIT.
+ * Run with: java RecipeParserBenchmark [number of recipes]
+ */
+public class RecipeParserBenchmark {
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+		List<Recipe> recipes = SyntheticRecipes.recipes(count, 1);
+		RecipeParser parser = new RecipeParser();
+		byte[][] files = new byte[count][];
+		long bytes = 0;
+		for (int i = 0; i < count; i++) {
+			String text = recipes.get(i).toFileFormat();
+			files[i] = text.getBytes(StandardCharsets.UTF_8);
+			bytes += files[i].length;
+			if (!parser.parseRecipe(files[i], 0, files[i].length).toFileFormat().equals(text)) {
+				throw new IllegalStateException(recipes.get(i).getName() + " doesn't parse back to the same recipe");
+			}
+		}
+		System.out.printf("%d recipes, %.1f MB of text, all parse back the same%n", count, bytes / 1e6);
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			long start = System.nanoTime();
+			long tokens = 0;
+			for (byte[] file : files) {
+				Scanner scanner = new Scanner(new String(file, StandardCharsets.UTF_8));
+				scanner.useDelimiter("\\s+");
+				while (scanner.hasNext()) {
+					scanner.next();
+					tokens++;
+				}
+			}
+			long scanned = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long steps = 0;
+			for (byte[] file : files) { steps += parser.parseRecipe(file, 0, file.length).getMethod().getSteps().size(); }
+			long parsed = System.nanoTime() - start;
+
+			System.out.printf("round %d: scanner split %d tokens in %.1f ms (%.0f recipes/s) | parser read %d steps in %.1f ms (%.0f recipes/s), %.1fx%n",
+					round, tokens, scanned / 1e6, count / (scanned / 1e9), steps, parsed / 1e6, count / (parsed / 1e9),
+					(double) scanned / parsed);
+		}
+	}
+}
@@ -0,0 +1,305 @@
+import recipeInfo.GenerationalFile;
+import recipeInfo.Recipe;
+import recipeInfo.RecipeCodec;
+import recipeInfo.RecipeHeader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of every recipe in a RecipeBook, so the book can be restored at startup without parsing the
+ * recipe files again.
+ * The snapshot is read through a memory map and is also the store the restored recipes are loaded from. Only each
+ * recipe's header is decoded at startup, and its ingredients and method are decoded from the mapped file whenever
+ * the recipe is asked for, found through a table holding where each recipe's record starts. So the heap only holds
+ * names, info and tags however large the library grows.
+ * Each recipe also records the file it came from with that file's modification time and length, so files changed
+ * since the snapshot can be found.
+ * As the snapshot is mapped while it is in use, each save is a new GenerationalFile generation rather than a
+ * replacement of the mapped file.
+ *
+ * File layout, big endian:
+ * header (magic int, version int, codec version int, count int),
+ * offset table (count + 1 longs, where each record starts, the last one being where the name table starts, followed
+ * by unused room if recipes were left out while writing),
+ * records, each the recipe's head encoded by a table RecipeCodec, then has source byte, then if it has one the
+ * source file (length int and UTF-8 bytes), modified long and length long, then the recipe's body,
+ * name table (count int, then each name as a length int and UTF-8 bytes).
+ * As the file is mapped whole it can't be more than 2GB.
+ */
+public class RecipeSnapshot {
+	private static final int MAGIC = 0x52424B53; //"RBKS"
+	private static final int VERSION = 3;
+	private static final int HEADER_BYTES = 16;
+
+	private final GenerationalFile file;
+
+	public RecipeSnapshot(File file) {
+		this.file = new GenerationalFile(file);
+	}
+
+	public boolean exists() { return file.exists(); }
+
+	/**
+	 * Write every recipe in the book to a new generation, which becomes current only once it is complete.
+	 * Recipes restored from an older snapshot are loaded one at a time as they are written, so the old generation
+	 * is read through its existing mapping, and is only deleted once it is no longer mapped. A recipe which can't be loaded any more,
+	 * e.g. because its file has been deleted or no longer parses, is left out, as it would be when restoring.
+	 * @param recipes   Every recipe in the book, as given by RecipeBook.getHeaders
+	 * @param sources   Where each recipe was loaded from, by name, recipes missing from it are saved without one
+	 * @return  why each recipe left out couldn't be loaded, empty if none were left out
+	 * @throws IOException if the snapshot can't be written
+	 */
+	public List<IllegalStateException> write(List<RecipeHeader> recipes, Map<String, Source> sources) throws IOException {
+		List<IllegalStateException> leftOut = new ArrayList<>();
+		int reserved = recipes.size(); //room in the offset table, recipes left out leave it partly unused
+		long[] offsets = new long[reserved + 1];
+		int count = 0;
+		RecipeCodec codec = new RecipeCodec(List.of());
+		File next = file.next();
+		try (FileOutputStream fileOut = new FileOutputStream(next);
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(RecipeCodec.VERSION);
+			out.writeInt(0); //count and offsets are filled in once the records are written
+			for (int i = 0; i <= reserved; i++) { out.writeLong(0); }
+			long position = HEADER_BYTES + 8L * (reserved + 1);
+			for (RecipeHeader header : recipes) {
+				Recipe r;
+				try {
+					r = header.getRecipe();
+				} catch (IllegalStateException e) {
+					leftOut.add(e);
+					continue;
+				}
+				offsets[count++] = position;
+				position += writeRecord(out, codec, r, sources.get(header.getName()));
+				if (position > Integer.MAX_VALUE) { throw new IOException("Recipe snapshot would be over 2GB"); }
+			}
+			offsets[count] = position;
+			List<String> names = codec.getNames();
+			out.writeInt(names.size());
+			for (String name : names) { writeString(out, name); }
+			out.flush();
+
+			ByteBuffer table = ByteBuffer.allocate(4 + 8 * (count + 1));
+			table.putInt(count);
+			for (int i = 0; i <= count; i++) { table.putLong(offsets[i]); }
+			table.flip();
+			FileChannel channel = fileOut.getChannel();
+			for (long at = HEADER_BYTES - 4; table.hasRemaining(); ) { at += channel.write(table, at); }
+			fileOut.getFD().sync();
+		}
+		file.commit(next);
+		return leftOut;
+	}
+
+	/**
+	 * @return  number of bytes written
+	 */
+	private static int writeRecord(DataOutputStream out, RecipeCodec codec, Recipe r, Source source) throws IOException {
+		int start = out.size();
+		out.write(codec.encodeHead(r));
+		out.writeBoolean(source != null);
+		if (source != null) {
+			writeString(out, source.getFile().getPath());
+			out.writeLong(source.modified);
+			out.writeLong(source.length);
+		}
+		out.write(codec.encodeBody(r));
+		return out.size() - start; //size wraps past 2GB, but the difference for one record is still right
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Map the snapshot and read the head of every recipe. The file stays mapped for as long as any of the
+	 * recipes read are in use, and their bodies are decoded from it when asked for.
+	 * @return  every recipe saved, in the order they were in the book
+	 * @throws IOException if the snapshot can't be read or is damaged
+	 */
+	public Contents read() throws IOException {
+		File current = file.current();
+		if (current == null) { throw new FileNotFoundException("No recipe snapshot has been saved"); }
+		ByteBuffer map;
+		try (FileChannel channel = FileChannel.open(current.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) { throw new IOException("Recipe snapshot is over 2GB"); }
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); //the mapping outlives the channel
+		}
+		try {
+			ByteBuffer in = map.duplicate();
+			if (in.getInt() != MAGIC) { throw new IOException("Not a recipe snapshot"); }
+			int version = in.getInt();
+			if (version != VERSION) { throw new IOException("Unsupported snapshot version " + version); }
+			int codecVersion = in.getInt();
+			if (codecVersion != RecipeCodec.VERSION) { throw new IOException("Unsupported recipe encoding " + codecVersion); }
+			int count = in.getInt();
+			if (count < 0 || HEADER_BYTES + 8L * (count + 1) > map.limit()) { throw new IOException("Recipe snapshot is damaged"); }
+
+			in.position((int) map.getLong(HEADER_BYTES + 8 * count));
+			String[] names = new String[in.getInt()];
+			for (int i = 0; i < names.length; i++) { names[i] = readString(in); }
+			Store store = new Store(map, new RecipeCodec(List.of(names)));
+
+			Contents contents = new Contents(count);
+			long previous = HEADER_BYTES + 8L * (count + 1);
+			for (int r = 0; r < count; r++) {
+				long offset = store.offset(r);
+				if (offset < previous || store.offset(r + 1) > map.limit()) { throw new IOException("Recipe snapshot is damaged"); }
+				previous = offset;
+				in.position((int) offset);
+				int ordinal = r;
+				contents.headers.add(store.codec.decodeHead(in, header -> store.body(ordinal, header)));
+				Source source = null;
+				if (in.get() != 0) { source = new Source(new File(readString(in)), in.getLong(), in.getLong()); }
+				contents.sources.add(source);
+			}
+			return contents;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Recipe snapshot is damaged", e);
+		}
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A mapped snapshot, which recipe bodies are decoded from. Each decode works on its own view of the mapping,
+	 * and the codec's name table is only read, so recipes can be loaded from several threads.
+	 */
+	private static final class Store {
+		private final ByteBuffer map;
+		private final RecipeCodec codec;
+
+		private Store(ByteBuffer map, RecipeCodec codec) {
+			this.map = map;
+			this.codec = codec;
+		}
+
+		/**
+		 * @param ordinal   Position of the recipe in the snapshot
+		 * @return  where the recipe's record starts, looked up in the offset table
+		 */
+		private long offset(int ordinal) {
+			return map.getLong(HEADER_BYTES + 8 * ordinal);
+		}
+
+		/**
+		 * Decode the body of a recipe.
+		 * @param ordinal   Position of the recipe in the snapshot
+		 * @param header    Header decoded from the recipe's head at startup
+		 * @return  the recipe
+		 * @throws IllegalStateException if the record is damaged
+		 */
+		private Recipe body(int ordinal, RecipeHeader header) {
+			ByteBuffer in = map.duplicate();
+			try {
+				in.position((int) offset(ordinal));
+				//skip the head and source, which have already been read
+				codec.skipHead(in);
+				if (in.get() != 0) {
+					int pathLength = in.getInt();
+					in.position(in.position() + pathLength + 8 + 8);
+				}
+				return codec.decodeBody(in, header);
+			} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+				throw new IllegalStateException("Recipe " + header.getName() + " is damaged in the snapshot", e);
+			}
+		}
+	}
+
+	/**
+	 * Everything read from a snapshot.
+	 */
+	public static class Contents {
+		private final List<RecipeHeader> headers;
+		private final List<Source> sources;
+
+		private Contents(int count) {
+			headers = new ArrayList<>(count);
+			sources = new ArrayList<>(count);
+		}
+
+		/**
+		 * @return  the header of every recipe, whose bodies are loaded from the snapshot when asked for
+		 */
+		public List<RecipeHeader> getHeaders() { return headers; }
+
+		/**
+		 * @return  the file each recipe came from, in the same order as the headers, null where it isn't known
+		 */
+		public List<Source> getSources() { return sources; }
+	}
+
+	/**
+	 * A recipe file, as it was when its recipe was read.
+	 */
+	public static class Source {
+		private final File file;
+		private final long modified;
+		private final long length;
+
+		public Source(File file, long modified, long length) {
+			this.file = file;
+			this.modified = modified;
+			this.length = length;
+		}
+
+		/**
+		 * Record the current state of a file. Should be called before the file is read, so a change made while
+		 * it is being read shows up as stale next time.
+		 * @param file  File to record
+		 * @return  the file with its modification time and length
+		 */
+		public static Source of(File file) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+				return new Source(file, attributes.lastModifiedTime().toMillis(), attributes.size());
+			} catch (IOException e) {
+				return new Source(file, 0, 0); //never current, as with File's own lastModified and length
+			}
+		}
+
+		public File getFile() { return file; }
+
+		public long getModified() { return modified; }
+
+		public long getLength() { return length; }
+
+		/**
+		 * @return  true if the file still exists and has the same modification time and length
+		 */
+		public boolean isCurrent() {
+			try {
+				//one stat call for both, rather than one each through File
+				BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+				return attributes.lastModifiedTime().toMillis() == modified && attributes.size() == length;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+}
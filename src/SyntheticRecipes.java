@@ -0,0 +1,67 @@
+import recipeInfo.Recipe;
+import recipeInfo.recipeContents.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Made up recipes for the benchmarks, shaped like real ones: a handful of ingredients from a shared pantry, a few
+ * numbered steps and up to three tags from a small set. The same seed always gives the same recipes.
+ */
+class SyntheticRecipes {
+	private static final String[] TAGS = {"VEGAN", "QUICK MEAL", "DINNER", "LUNCH", "SPICY CHICKEN", "CHICKEN",
+			"DESSERT", "BREAKFAST", "VEGETARIAN", "ITALIAN"};
+	private static final String[] WORDS = {"stir", "the", "pan", "until", "golden", "add", "salt", "and", "simmer",
+			"for", "ten", "minutes", "then", "serve", "with", "rice"};
+	private static final Measurement.UnitsOfMeasurement[] UNITS = Measurement.UnitsOfMeasurement.values();
+	private static final int PANTRY = 200;
+
+	private SyntheticRecipes() {}
+
+	/**
+	 * @param count Number of recipes to make
+	 * @param seed  Seed for the random generator
+	 * @return  recipes named "Recipe 0" to "Recipe count-1"
+	 */
+	static List<Recipe> recipes(int count, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		List<Recipe> recipes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) { recipes.add(recipe(i, random)); }
+		return recipes;
+	}
+
+	/**
+	 * @param number    Number to name the recipe by
+	 * @param random    Random generator to use
+	 * @return  a made up recipe
+	 */
+	static Recipe recipe(int number, SplittableRandom random) {
+		ArrayList<Ingredient> ingredients = new ArrayList<>();
+		for (int i = 3 + random.nextInt(8); i > 0; i--) {
+			Measurement amount = new Measurement(random.nextInt(2000) / 4.0, UNITS[random.nextInt(UNITS.length)]);
+			ingredients.add(new Ingredient(amount, "ingredient " + random.nextInt(PANTRY)));
+		}
+		ArrayList<Step> steps = new ArrayList<>();
+		for (int i = 1, count = 2 + random.nextInt(7); i <= count; i++) {
+			StringBuilder text = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+			for (int w = 4 + random.nextInt(12); w > 0; w--) { text.append(' ').append(WORDS[random.nextInt(WORDS.length)]); }
+			steps.add(new Step(text.toString(), i));
+		}
+		ArrayList<String> tags = new ArrayList<>();
+		for (int i = random.nextInt(4); i > 0; i--) {
+			String tag = TAGS[random.nextInt(TAGS.length)];
+			if (!tags.contains(tag)) { tags.add(tag); }
+		}
+		return new Recipe(ingredients, new Method(steps), "Recipe " + number, info(random), tags);
+	}
+
+	/**
+	 * @param random    Random generator to use
+	 * @return  made up serves and times, up to an hour and a half of prep and three hours of cooking
+	 */
+	static InfoBlock info(SplittableRandom random) {
+		return new InfoBlock(Duration.ofMinutes(random.nextInt(90)), Duration.ofMinutes(random.nextInt(180)), 1 + random.nextInt(8));
+	}
+}
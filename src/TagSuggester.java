@@ -0,0 +1,66 @@
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Looks up tag suggestions off the event thread.
+ * Requests are debounced, so a lookup only starts once typing pauses, and every new request makes the older ones
+ * stale. A stale request is dropped wherever it has got to, so only the result for the latest text ever reaches
+ * the event thread.
+ */
+public class TagSuggester {
+	private final Function<String, List<String>> lookup;
+	private final long debounceMillis;
+	private final ScheduledExecutorService executor;
+	private final AtomicLong latest = new AtomicLong(); //number of the newest request
+	private ScheduledFuture<?> pending;
+
+	/**
+	 * @param lookup    Finds the suggestions for some text, called from the background thread
+	 * @param debounceMillis    How long the text must stay unchanged before it is looked up
+	 */
+	public TagSuggester(Function<String, List<String>> lookup, long debounceMillis) {
+		this.lookup = lookup;
+		this.debounceMillis = debounceMillis;
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "tag-suggestions");
+			t.setDaemon(true); //never hold the program open
+			return t;
+		});
+	}
+
+	/**
+	 * Ask for suggestions for some text, replacing any request still in flight.
+	 * Must be called from the event thread.
+	 * @param text  Text to look up
+	 * @param onResult  Given the suggestions on the event thread, unless a newer request has been made by then
+	 */
+	public void request(String text, Consumer<List<String>> onResult) {
+		long id = cancel();
+		pending = executor.schedule(() -> {
+			if (latest.get() != id) { return; } //replaced while waiting
+			List<String> result = lookup.apply(text);
+			if (latest.get() != id) { return; } //replaced while looking up
+			SwingUtilities.invokeLater(() -> {
+				if (latest.get() == id) { onResult.accept(result); }
+			});
+		}, debounceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Drop any request in flight, so its result is never delivered.
+	 * Must be called from the event thread.
+	 * @return  the number of the next request
+	 */
+	public long cancel() {
+		if (pending != null) { pending.cancel(false); }
+		pending = null;
+		return latest.incrementAndGet();
+	}
+}
@@ -0,0 +1,111 @@
+package recipeInfo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A file which is saved whole as a series of generations, for files which are memory mapped while in use.
+ * Some systems, Windows among them, won't replace or delete a file while it is mapped, so each save goes to a new
+ * file named after the generation (e.g. Recipes.snapshot.7), and a small pointer file at the file's own path, which
+ * is never mapped, is replaced to name the current generation. Older generations are deleted once a newer one is
+ * current, and any which are still mapped are left for a later save to delete.
+ *
+ * Pointer layout, big endian: magic int, generation long.
+ */
+public class GenerationalFile {
+    private static final int MAGIC = 0x52474E50; //"RGNP"
+
+    private final File pointer;
+
+    /**
+     * @param pointer   Path of the pointer file, which the generations are named after
+     */
+    public GenerationalFile(File pointer) {
+        this.pointer = pointer;
+    }
+
+    /**
+     * @return  true if something has been saved at the file's path, which may not be a generation
+     */
+    public boolean exists() { return pointer.exists(); }
+
+    /**
+     * @return  the file holding the current generation, null if none has been saved
+     * @throws IOException if the pointer can't be read
+     */
+    public File current() throws IOException {
+        long generation = currentGeneration();
+        return generation == 0 ? null : generation(generation);
+    }
+
+    /**
+     * Start the next generation. The file returned isn't current until it has been written and committed.
+     * @return  an empty path to write the next generation to
+     * @throws IOException if the pointer can't be read or a leftover file is in the way
+     */
+    public File next() throws IOException {
+        File next = generation(currentGeneration() + 1);
+        Files.deleteIfExists(next.toPath()); //left by a save which failed before committing
+        return next;
+    }
+
+    /**
+     * Make a generation current once it has been completely written and synced, then delete the older ones.
+     * @param next  File returned by next
+     * @throws IOException if the pointer can't be replaced, in which case the previous generation stays current
+     */
+    public void commit(File next) throws IOException {
+        long generation = Long.parseLong(next.getName().substring(pointer.getName().length() + 1));
+        File temp = new File(pointer.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(fileOut)) {
+            out.writeInt(MAGIC);
+            out.writeLong(generation);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(temp.toPath(), pointer.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteOld(generation);
+    }
+
+    /**
+     * Delete every generation but the current one, leaving any which can't be deleted yet because they're mapped.
+     */
+    private void deleteOld(long current) {
+        File dir = pointer.getAbsoluteFile().getParentFile();
+        String prefix = pointer.getName() + ".";
+        File[] files = dir == null ? null : dir.listFiles((d, name) -> name.startsWith(prefix)
+                && name.length() > prefix.length() && name.substring(prefix.length()).chars().allMatch(Character::isDigit));
+        if (files == null) { return; }
+        for (File f : files) {
+            if (f.getName().equals(prefix + current)) { continue; }
+            try {
+                Files.deleteIfExists(f.toPath());
+            } catch (IOException e) {
+                //still mapped, the next save tries again
+            }
+        }
+    }
+
+    /**
+     * @return  the current generation, 0 if there isn't one, including when the pointer is damaged or is a file
+     *          saved whole from before generations, which the next commit replaces
+     */
+    private long currentGeneration() throws IOException {
+        if (!pointer.exists()) { return 0; }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(pointer))) {
+            if (pointer.length() != 12 || in.readInt() != MAGIC) { return 0; }
+            return Math.max(in.readLong(), 0);
+        }
+    }
+
+    private File generation(long generation) {
+        return new File(pointer.getPath() + "." + generation);
+    }
+}
@@ -38,6 +38,8 @@ public class Recipe {
 
     public String getName() { return name; }
 
+    public Method getMethod() { return method; }
+
     public ArrayList<Ingredient> getIngredients() { return ingredients; }
 
     /**
@@ -0,0 +1,318 @@
+package recipeInfo;
+
+import recipeInfo.recipeContents.InfoBlock;
+import recipeInfo.recipeContents.Ingredient;
+import recipeInfo.recipeContents.Measurement;
+import recipeInfo.recipeContents.Method;
+import recipeInfo.recipeContents.Step;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Compact binary encoding of recipes, an alternative to the text format for saving and passing recipes around.
+ * Decoding a recipe gives one which writes exactly the same text format as the original.
+ *
+ * Numbers are varints, seven bits a byte with the high bit set on every byte but the last, and signed numbers are
+ * zigzag encoded first so small negatives stay short. Each ingredient's unit and how its amount is stored share one
+ * byte, and an amount with up to three decimal places is stored as its digits. Step numbers are stored as the
+ * difference from the number expected next, so a normally numbered method costs a byte a step.
+ * Tags and ingredient names repeat across recipes, so they are dictionary coded as an id each. In a streaming
+ * codec a name is written in full the first time it's used, so a stream of recipes decodes on its own from its
+ * start. In a table codec only ids are written, and the table from getNames has to be saved alongside.
+ *
+ * A recipe is a head (name, serves, prep and cook seconds, tag count then each tag) followed by a body
+ * (ingredient count then each (unit and amount byte, amount, name), step count then each (number, text)), so the
+ * head can be decoded on its own. Strings are a varint byte length and UTF-8 bytes.
+ */
+public class RecipeCodec {
+    public static final int VERSION = 1;
+
+    private static final Measurement.UnitsOfMeasurement[] UNITS = Measurement.UnitsOfMeasurement.values();
+    private static final double[] SCALES = {1, 10, 100, 1000}; //decimal places an amount can be stored with
+    private static final int RAW_AMOUNT = SCALES.length; //amount stored as the 8 bytes of the double
+
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names;
+    private final boolean streaming;
+    private byte[] buf = new byte[256];
+    private int pos;
+
+    /**
+     * Streaming codec, which writes each name in full the first time and reads names the same way.
+     * Encoding and decoding each keep their own state, so use one codec per stream and per thread.
+     */
+    public RecipeCodec() {
+        this.names = new ArrayList<>();
+        this.streaming = true;
+    }
+
+    /**
+     * Table codec, which only writes ids. Once built, decoding doesn't change it, so recipes can be decoded from
+     * several threads.
+     * @param names Table of names saved from an earlier codec's getNames, empty to start a new one
+     */
+    public RecipeCodec(List<String> names) {
+        this.names = new ArrayList<>(names);
+        this.streaming = false;
+        for (int i = 0; i < names.size(); i++) { ids.put(names.get(i), i); }
+    }
+
+    /**
+     * @return  every name given an id, in id order, to be saved for a table codec
+     */
+    public List<String> getNames() { return names; }
+
+    /**
+     * @param r Recipe to encode
+     * @return  the head and body of the recipe
+     */
+    public byte[] encode(Recipe r) {
+        pos = 0;
+        writeHead(r);
+        writeBody(r);
+        return Arrays.copyOf(buf, pos);
+    }
+
+    /**
+     * @param r Recipe to encode
+     * @return  just the head of the recipe
+     */
+    public byte[] encodeHead(Recipe r) {
+        pos = 0;
+        writeHead(r);
+        return Arrays.copyOf(buf, pos);
+    }
+
+    /**
+     * @param r Recipe to encode
+     * @return  just the body of the recipe
+     */
+    public byte[] encodeBody(Recipe r) {
+        pos = 0;
+        writeBody(r);
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void writeHead(Recipe r) {
+        writeString(r.getName());
+        InfoBlock info = r.getInfo();
+        writeVarLong(zigzag(info.getServes()));
+        writeVarLong(zigzag(info.getPrepTime().getSeconds()));
+        writeVarLong(zigzag(info.getCookTime().getSeconds()));
+        writeVarLong(r.getTags().size());
+        for (String tag : r.getTags()) { writeName(tag); }
+    }
+
+    private void writeBody(Recipe r) {
+        writeVarLong(r.getIngredients().size());
+        for (Ingredient i : r.getIngredients()) {
+            Measurement m = i.getMeasurement();
+            int unit = m.getUnit() == null ? 0 : m.getUnit().ordinal() + 1;
+            double amount = m.getAmount();
+            int scale = scaleOf(amount);
+            write(scale << 4 | unit);
+            if (scale == RAW_AMOUNT) {
+                long bits = Double.doubleToRawLongBits(amount);
+                for (int shift = 56; shift >= 0; shift -= 8) { write((int) (bits >>> shift)); }
+            } else {
+                writeVarLong(zigzag(Math.round(amount * SCALES[scale])));
+            }
+            writeName(i.getIngredient());
+        }
+        List<Step> steps = r.getMethod().getSteps();
+        writeVarLong(steps.size());
+        int expected = 1;
+        for (Step s : steps) {
+            writeVarLong(zigzag((long) s.getStepNumber() - expected));
+            writeString(s.getStep());
+            expected = s.getStepNumber() + 1;
+        }
+    }
+
+    /**
+     * Find the fewest decimal places an amount can be stored with and still decode to exactly the same double.
+     * @param amount    Amount to store
+     * @return  index into SCALES, or RAW_AMOUNT if it has to be stored whole
+     */
+    private static int scaleOf(double amount) {
+        for (int scale = 0; scale < SCALES.length; scale++) {
+            double scaled = amount * SCALES[scale];
+            if (Math.abs(scaled) >= 0x1p53) { break; }
+            long digits = Math.round(scaled);
+            if (Double.compare(digits / SCALES[scale], amount) == 0) { return scale; } //compare keeps -0.0 apart
+        }
+        return RAW_AMOUNT;
+    }
+
+    /**
+     * Decode a whole recipe.
+     * @param in    Buffer positioned at the recipe, left just after it
+     * @return  the recipe
+     * @throws IllegalArgumentException if the bytes aren't a recipe
+     * @throws java.nio.BufferUnderflowException if the recipe is cut short
+     */
+    public Recipe decode(ByteBuffer in) {
+        return decodeBody(in, decodeHead(in, null));
+    }
+
+    /**
+     * Decode the head of a recipe.
+     * @param in    Buffer positioned at the recipe, left just after its head
+     * @param body  Loads the rest of the recipe when asked for, given its header
+     * @return  header of the recipe
+     */
+    public RecipeHeader decodeHead(ByteBuffer in, Function<RecipeHeader, Recipe> body) {
+        String name = readString(in);
+        int serves = (int) unzigzag(readVarLong(in));
+        Duration prep = Duration.ofSeconds(unzigzag(readVarLong(in)));
+        Duration cook = Duration.ofSeconds(unzigzag(readVarLong(in)));
+        int tagCount = readCount(in);
+        ArrayList<String> tags = new ArrayList<>(tagCount);
+        for (int i = tagCount; i > 0; i--) { tags.add(readName(in)); }
+        return new RecipeHeader(name, new InfoBlock(prep, cook, serves), tags, body);
+    }
+
+    /**
+     * Move past the head of a recipe without building anything. Only works with a table codec, as a streaming
+     * codec has to read the names a head introduces.
+     * @param in    Buffer positioned at the recipe, left just after its head
+     */
+    public void skipHead(ByteBuffer in) {
+        if (streaming) { throw new IllegalStateException("A streaming codec can't skip names"); }
+        int nameLength = readCount(in);
+        in.position(in.position() + nameLength);
+        for (int i = 3; i > 0; i--) { readVarLong(in); }
+        for (int i = readCount(in); i > 0; i--) { readVarLong(in); }
+    }
+
+    /**
+     * Decode the body of a recipe, completing it with its header.
+     * @param in    Buffer positioned at the body, left just after it
+     * @param header    Header decoded from the recipe's head
+     * @return  the recipe
+     */
+    public Recipe decodeBody(ByteBuffer in, RecipeHeader header) {
+        int ingredientCount = readCount(in);
+        ArrayList<Ingredient> ingredients = new ArrayList<>(ingredientCount);
+        for (int i = ingredientCount; i > 0; i--) {
+            int kind = in.get() & 0xFF;
+            int scale = kind >>> 4;
+            int unit = kind & 0xF;
+            if (scale > RAW_AMOUNT || unit > UNITS.length) { throw new IllegalArgumentException("Bad ingredient"); }
+            double amount = scale == RAW_AMOUNT ? in.getDouble() : unzigzag(readVarLong(in)) / SCALES[scale];
+            ingredients.add(new Ingredient(new Measurement(amount, unit == 0 ? null : UNITS[unit - 1]), readName(in)));
+        }
+        int stepCount = readCount(in);
+        ArrayList<Step> steps = new ArrayList<>(stepCount);
+        int expected = 1;
+        for (int i = stepCount; i > 0; i--) {
+            int number = (int) (expected + unzigzag(readVarLong(in)));
+            steps.add(new Step(readString(in), number));
+            expected = number + 1;
+        }
+        return new Recipe(ingredients, new Method(steps), header.getName(), header.getInfo(), header.getTags());
+    }
+
+    private void writeName(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            writeVarLong(id + 1);
+            return;
+        }
+        ids.put(name, names.size());
+        names.add(name);
+        if (streaming) {
+            write(0); //new name follows in full, and takes the next id
+            writeString(name);
+        } else {
+            writeVarLong(names.size());
+        }
+    }
+
+    private String readName(ByteBuffer in) {
+        int id = readCount(in);
+        if (id == 0) {
+            if (!streaming) { throw new IllegalArgumentException("Name missing from the table"); }
+            String name = readString(in);
+            names.add(name);
+            return name;
+        }
+        if (id > names.size()) { throw new IllegalArgumentException("Unknown name " + id); }
+        return names.get(id - 1);
+    }
+
+    private void writeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Read a string written by this codec, or by writeString.
+     * @param in    Buffer positioned at the string, left just after it
+     * @return  the string
+     */
+    public static String readString(ByteBuffer in) {
+        int length = readCount(in);
+        if (in.hasArray()) {
+            String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+    }
+
+    /**
+     * Read an unsigned varint.
+     * @param in    Buffer positioned at the varint, left just after it
+     * @return  the value
+     */
+    public static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) { return value; }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static int readCount(ByteBuffer in) {
+        long count = readVarLong(in);
+        if (count > Integer.MAX_VALUE) { throw new IllegalArgumentException("Bad count " + count); }
+        return (int) count;
+    }
+
+    private static long zigzag(long value) { return (value << 1) ^ (value >> 63); }
+
+    private static long unzigzag(long value) { return (value >>> 1) ^ -(value & 1); }
+
+    private void write(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    private void ensure(int bytes) {
+        if (pos + bytes > buf.length) { buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + bytes)); }
+    }
+}
@@ -0,0 +1,54 @@
+package recipeInfo;
+
+import recipeInfo.recipeContents.InfoBlock;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+
+/**
+ * The parts of a recipe needed to list and filter it: its name, info and tags.
+ * The rest of the recipe, its ingredients and method, is only loaded when it's asked for, so a book can hold a
+ * header for every recipe without holding every body.
+ */
+public class RecipeHeader {
+
+    private final String name;
+    private final InfoBlock info;
+    private final ArrayList<String> tags;
+    private final Function<RecipeHeader, Recipe> body;
+
+    /**
+     * @param name  Name of the recipe
+     * @param info  Serves and times of the recipe
+     * @param tags  Tags of the recipe
+     * @param body  Loads the whole recipe from this header each time it's called, e.g. by decoding the rest from a file
+     */
+    public RecipeHeader(String name, InfoBlock info, ArrayList<String> tags, Function<RecipeHeader, Recipe> body) {
+        this.name = name;
+        this.info = info;
+        this.tags = tags;
+        this.body = body;
+    }
+
+    /**
+     * Header for a recipe already in memory, which is kept as its body.
+     * @param r Recipe to head
+     * @return  header holding the recipe
+     */
+    public static RecipeHeader of(Recipe r) {
+        return new RecipeHeader(r.getName(), r.getInfo(), r.getTags(), h -> r);
+    }
+
+    public String getName() { return name; }
+
+    public InfoBlock getInfo() { return info; }
+
+    public ArrayList<String> getTags() { return tags; }
+
+    /**
+     * Load the whole recipe. Stored recipes are decoded again on every call and not kept, so hold on to the result
+     * while it's needed rather than calling this repeatedly.
+     * @return  the recipe
+     */
+    public Recipe getRecipe() { return body.apply(this); }
+}
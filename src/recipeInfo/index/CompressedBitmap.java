@@ -0,0 +1,276 @@
+package recipeInfo.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, used to hold sets of recipe ordinals.
+ * Values are split into chunks of 65536 by their high 16 bits. A chunk with only a few values stores them as a
+ * sorted char array, and a chunk with many values switches to a plain 1024 word bitmap, so both sparse and dense
+ * sets stay small. Adding values in increasing order (as new recipes are added) only ever touches the last chunk.
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096; //past this a bitmap chunk is smaller than an array chunk
+    private static final int CHUNK_WORDS = 1024;
+
+    private char[] keys;
+    private char[][] arrays; //sorted low bits for sparse chunks, null for dense chunks
+    private long[][] words; //bitmap for dense chunks, null for sparse chunks
+    private int[] counts;
+    private int chunks;
+    private int cardinality;
+
+    public CompressedBitmap() {
+        keys = new char[4];
+        arrays = new char[4][];
+        words = new long[4][];
+        counts = new int[4];
+    }
+
+    /**
+     * Copy the set.
+     * @return  a set with the same values which can be changed independently
+     */
+    public CompressedBitmap copy() {
+        CompressedBitmap c = new CompressedBitmap();
+        int capacity = Math.max(chunks, 4);
+        c.keys = Arrays.copyOf(keys, capacity);
+        c.arrays = new char[capacity][];
+        c.words = new long[capacity][];
+        c.counts = Arrays.copyOf(counts, capacity);
+        for (int i = 0; i < chunks; i++) {
+            if (words[i] != null) {
+                c.words[i] = words[i].clone();
+            } else {
+                c.arrays[i] = Arrays.copyOf(arrays[i], Math.max(counts[i], 4));
+            }
+        }
+        c.chunks = chunks;
+        c.cardinality = cardinality;
+        return c;
+    }
+
+    /**
+     * Add a value to the set.
+     * @param value Value to add, must not be negative
+     */
+    public void add(int value) {
+        if (value < 0) { throw new IllegalArgumentException("Negative value " + value); }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int chunk = findChunk(key);
+        if (chunk < 0) {
+            chunk = -chunk - 1;
+            insertChunk(chunk, key);
+        }
+        if (words[chunk] != null) {
+            long[] w = words[chunk];
+            long bit = 1L << low;
+            if ((w[low >>> 6] & bit) != 0) { return; }
+            w[low >>> 6] |= bit;
+        } else {
+            char[] a = arrays[chunk];
+            int n = counts[chunk];
+            int pos = (n > 0 && a[n - 1] < low) ? -n - 1 : Arrays.binarySearch(a, 0, n, low);
+            if (pos >= 0) { return; }
+            pos = -pos - 1;
+            if (n == ARRAY_LIMIT) {
+                toBitmap(chunk);
+                words[chunk][low >>> 6] |= 1L << low;
+            } else {
+                if (n == a.length) { a = arrays[chunk] = Arrays.copyOf(a, Math.min(ARRAY_LIMIT, n * 2)); }
+                System.arraycopy(a, pos, a, pos + 1, n - pos);
+                a[pos] = low;
+            }
+        }
+        counts[chunk]++;
+        cardinality++;
+    }
+
+    /**
+     * @param value Value to look for
+     * @return  true if the value is in the set
+     */
+    public boolean contains(int value) {
+        if (value < 0) { return false; }
+        int chunk = findChunk((char) (value >>> 16));
+        if (chunk < 0) { return false; }
+        char low = (char) value;
+        if (words[chunk] != null) { return (words[chunk][low >>> 6] & (1L << low)) != 0; }
+        return Arrays.binarySearch(arrays[chunk], 0, counts[chunk], low) >= 0;
+    }
+
+    public int cardinality() { return cardinality; }
+
+    public boolean isEmpty() { return cardinality == 0; }
+
+    /**
+     * Find the first value in the set at or after the given value, in the style of BitSet.nextSetBit.
+     * Lets callers walk the set without allocating an iterator.
+     * @param from  Value to start from
+     * @return  the next value in the set, or -1 if there are none
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) { from = 0; }
+        int chunk = findChunk((char) (from >>> 16));
+        int low = from & 0xFFFF;
+        if (chunk < 0) {
+            chunk = -chunk - 1;
+            low = 0;
+        }
+        for (; chunk < chunks; chunk++, low = 0) {
+            int found = nextInChunk(chunk, low);
+            if (found >= 0) { return (keys[chunk] << 16) | found; }
+        }
+        return -1;
+    }
+
+    /**
+     * Call an action with every value in the set, in increasing order. Quicker than walking with nextSetBit when
+     * every value is wanted, as each chunk is walked straight through rather than searched for each value.
+     * @param action    Action to call with each value
+     */
+    public void forEach(IntConsumer action) {
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int high = keys[chunk] << 16;
+            if (words[chunk] != null) {
+                long[] w = words[chunk];
+                for (int i = 0; i < CHUNK_WORDS; i++) {
+                    for (long word = w[i]; word != 0; word &= word - 1) {
+                        action.accept(high | (i << 6) + Long.numberOfTrailingZeros(word));
+                    }
+                }
+            } else {
+                char[] a = arrays[chunk];
+                for (int i = 0; i < counts[chunk]; i++) { action.accept(high | a[i]); }
+            }
+        }
+    }
+
+    private int nextInChunk(int chunk, int low) {
+        if (words[chunk] != null) {
+            long[] w = words[chunk];
+            int i = low >>> 6;
+            long word = w[i] & (-1L << low);
+            while (true) {
+                if (word != 0) { return (i << 6) + Long.numberOfTrailingZeros(word); }
+                if (++i == CHUNK_WORDS) { return -1; }
+                word = w[i];
+            }
+        }
+        char[] a = arrays[chunk];
+        int pos = Arrays.binarySearch(a, 0, counts[chunk], (char) low);
+        if (pos < 0) { pos = -pos - 1; }
+        return pos < counts[chunk] ? a[pos] : -1;
+    }
+
+    /**
+     * Intersect two sets.
+     * @param a First set
+     * @param b Second set
+     * @return  a new set holding the values in both
+     */
+    public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.chunks && j < b.chunks) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.appendIntersection(a.keys[i], a, i, b, j);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private void appendIntersection(char key, CompressedBitmap a, int i, CompressedBitmap b, int j) {
+        if (a.words[i] != null && b.words[j] != null) {
+            long[] w = new long[CHUNK_WORDS];
+            int count = 0;
+            for (int k = 0; k < CHUNK_WORDS; k++) {
+                w[k] = a.words[i][k] & b.words[j][k];
+                count += Long.bitCount(w[k]);
+            }
+            if (count == 0) { return; }
+            insertChunk(chunks, key);
+            if (count > ARRAY_LIMIT) {
+                arrays[chunks - 1] = null;
+                words[chunks - 1] = w;
+            } else {
+                arrays[chunks - 1] = bitmapToArray(w, count);
+            }
+            counts[chunks - 1] = count;
+            cardinality += count;
+            return;
+        }
+        //at least one side is sparse, so walk it and probe the other
+        CompressedBitmap sparse = a.words[i] == null ? a : b;
+        int s = sparse == a ? i : j;
+        CompressedBitmap other = sparse == a ? b : a;
+        int o = sparse == a ? j : i;
+        char[] out = new char[Math.min(sparse.counts[s], other.counts[o])];
+        int count = 0;
+        for (int k = 0; k < sparse.counts[s]; k++) {
+            char low = sparse.arrays[s][k];
+            boolean present = other.words[o] != null
+                    ? (other.words[o][low >>> 6] & (1L << low)) != 0
+                    : Arrays.binarySearch(other.arrays[o], 0, other.counts[o], low) >= 0;
+            if (present) { out[count++] = low; }
+        }
+        if (count == 0) { return; }
+        insertChunk(chunks, key);
+        arrays[chunks - 1] = out;
+        counts[chunks - 1] = count;
+        cardinality += count;
+    }
+
+    private static char[] bitmapToArray(long[] w, int count) {
+        char[] a = new char[count];
+        int n = 0;
+        for (int k = 0; k < CHUNK_WORDS; k++) {
+            long word = w[k];
+            while (word != 0) {
+                a[n++] = (char) ((k << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return a;
+    }
+
+    private void toBitmap(int chunk) {
+        long[] w = new long[CHUNK_WORDS];
+        char[] a = arrays[chunk];
+        for (int k = 0; k < counts[chunk]; k++) { w[a[k] >>> 6] |= 1L << a[k]; }
+        words[chunk] = w;
+        arrays[chunk] = null;
+    }
+
+    private int findChunk(char key) {
+        if (chunks > 0 && keys[chunks - 1] == key) { return chunks - 1; } //appending in order is the common case
+        return Arrays.binarySearch(keys, 0, chunks, key);
+    }
+
+    private void insertChunk(int pos, char key) {
+        if (chunks == keys.length) {
+            int size = chunks * 2;
+            keys = Arrays.copyOf(keys, size);
+            arrays = Arrays.copyOf(arrays, size);
+            words = Arrays.copyOf(words, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+        System.arraycopy(keys, pos, keys, pos + 1, chunks - pos);
+        System.arraycopy(arrays, pos, arrays, pos + 1, chunks - pos);
+        System.arraycopy(words, pos, words, pos + 1, chunks - pos);
+        System.arraycopy(counts, pos, counts, pos + 1, chunks - pos);
+        keys[pos] = key;
+        arrays[pos] = new char[4];
+        words[pos] = null;
+        counts[pos] = 0;
+        chunks++;
+    }
+}
@@ -0,0 +1,469 @@
+package recipeInfo.index;
+
+import recipeInfo.Recipe;
+import recipeInfo.recipeContents.Ingredient;
+import recipeInfo.recipeContents.Step;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Full text index over the names, ingredient names and method steps of recipes, ranked with BM25.
+ * Text is split into words on anything but letters and digits, lower cased with accents removed, common words
+ * dropped and plurals cut back to their singular, and the same is done to queries. A word in a recipe's name counts
+ * three times and in an ingredient twice, so a query matching the name ranks above one matching a step.
+ *
+ * Each recipe is a document, found by a key, and each word holds a postings list of the documents it appears in,
+ * stored as varints of the gap from the previous document and the word's weighted count in the document. Removing
+ * a recipe only marks its document deleted, and deleted documents are dropped from the lists once they outnumber
+ * the live ones, or when the index is written. Safe to use from several threads.
+ *
+ * File layout, big endian:
+ * header (magic int, version int, document count int),
+ * documents (key as a length int and UTF-8 bytes, length int),
+ * words (count int, then each word as a length int and UTF-8 bytes, document count int, last document int,
+ * postings length int and bytes).
+ */
+public class FullTextIndex {
+    private static final int MAGIC = 0x52545854; //"RTXT"
+    private static final int VERSION = 1;
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int INGREDIENT_WEIGHT = 2;
+    private static final int STEP_WEIGHT = 1;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MIN_COMPACTION = 1024; //deleted documents worth rewriting the lists for
+
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "for",
+            "from", "in", "into", "is", "it", "of", "on", "or", "the", "then", "to", "until", "with");
+
+    private String[] keys = new String[64]; //key of each document, by document id
+    private int[] lengths = new int[64]; //weighted number of words in each document
+    private int documents;
+    private final BitSet deleted = new BitSet();
+    private final HashMap<String, Integer> live = new HashMap<>(); //key -> id of its live document
+    private long liveLength; //total length of the live documents
+    private HashMap<String, Postings> words = new HashMap<>();
+
+    /**
+     * Read an index written by write.
+     * @param file  File to read
+     * @return  the index, or an empty one if the file doesn't exist
+     * @throws IOException if the file can't be read or isn't an index
+     */
+    public static FullTextIndex open(File file) throws IOException {
+        FullTextIndex index = new FullTextIndex();
+        if (!file.exists()) { return index; }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) { throw new IOException("Not a full text index"); }
+            int count = in.readInt();
+            if (count < 0) { throw new IOException("Full text index is damaged"); }
+            index.keys = new String[Math.max(count, 64)];
+            index.lengths = new int[index.keys.length];
+            for (int i = 0; i < count; i++) {
+                index.keys[i] = readString(in);
+                index.lengths[i] = in.readInt();
+                index.live.put(index.keys[i], i);
+                index.liveLength += index.lengths[i];
+            }
+            index.documents = count;
+            for (int i = in.readInt(); i > 0; i--) {
+                String word = readString(in);
+                Postings p = new Postings();
+                p.documents = in.readInt();
+                p.last = in.readInt();
+                p.bytes = new byte[in.readInt()];
+                if (p.last >= count) { throw new IOException("Full text index is damaged"); }
+                p.size = p.bytes.length;
+                in.readFully(p.bytes);
+                index.words.put(word, p);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Write the index, without its deleted documents, replacing the old file only once the new one is complete.
+     * @param file  File to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        byte[] encoded;
+        synchronized (this) {
+            if (!deleted.isEmpty()) { compact(); }
+            encoded = encode();
+        }
+        //the copy is written and synced without the lock, so searches never wait on the disk
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(encoded);
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copy the index into the file format. Must hold the lock.
+     */
+    private byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(documents);
+            for (int i = 0; i < documents; i++) {
+                writeString(out, keys[i]);
+                out.writeInt(lengths[i]);
+            }
+            out.writeInt(words.size());
+            for (Map.Entry<String, Postings> e : words.entrySet()) {
+                Postings p = e.getValue();
+                writeString(out, e.getKey());
+                out.writeInt(p.documents);
+                out.writeInt(p.last);
+                out.writeInt(p.size);
+                out.write(p.bytes, 0, p.size);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return  number of recipes indexed
+     */
+    public synchronized int size() { return live.size(); }
+
+    /**
+     * @param key   Key of a recipe
+     * @return  true if a recipe is indexed under the key
+     */
+    public synchronized boolean contains(String key) { return live.containsKey(key); }
+
+    /**
+     * Index a recipe, unless one is already indexed under its key.
+     * @param key   Key to find the recipe by, e.g. its name
+     * @param r Recipe to index
+     * @return  true if it was indexed, false if the key was taken
+     */
+    public boolean add(String key, Recipe r) {
+        //tokenizing needs no lock, so do it before taking one
+        HashMap<String, Integer> counts = new HashMap<>();
+        int length = count(r.getName(), NAME_WEIGHT, counts);
+        for (Ingredient i : r.getIngredients()) { length += count(i.getIngredient(), INGREDIENT_WEIGHT, counts); }
+        for (Step s : r.getMethod().getSteps()) { length += count(s.getStep(), STEP_WEIGHT, counts); }
+
+        synchronized (this) {
+            if (live.containsKey(key)) { return false; }
+            if (documents == keys.length) {
+                keys = Arrays.copyOf(keys, documents * 2);
+                lengths = Arrays.copyOf(lengths, documents * 2);
+            }
+            int id = documents++;
+            keys[id] = key;
+            lengths[id] = length;
+            live.put(key, id);
+            liveLength += length;
+            for (Map.Entry<String, Integer> e : counts.entrySet()) {
+                words.computeIfAbsent(e.getKey(), k -> new Postings()).add(id, e.getValue());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stop finding the recipe under a key.
+     * @param key   Key of the recipe
+     * @return  true if a recipe was indexed under the key
+     */
+    public synchronized boolean remove(String key) {
+        Integer id = live.remove(key);
+        if (id == null) { return false; }
+        deleted.set(id);
+        liveLength -= lengths[id];
+        if (deleted.cardinality() >= MIN_COMPACTION && deleted.cardinality() > live.size()) { compact(); }
+        return true;
+    }
+
+    /**
+     * Stop finding every recipe whose key matches, e.g. ones a saved index holds which are no longer in the book.
+     * @param matches   Test for keys to remove
+     */
+    public synchronized void removeIf(Predicate<String> matches) {
+        for (String key : new ArrayList<>(live.keySet())) {
+            if (matches.test(key)) { remove(key); }
+        }
+    }
+
+    /**
+     * Find the recipes best matching a query. A recipe matches if it has any word of the query, and is scored by
+     * BM25, the sum over the query's words of how rare the word is times how often the recipe uses it, relative to
+     * the recipe's length.
+     * @param query Text to look for
+     * @param limit Most recipes wanted
+     * @return  keys of the best matching recipes, best first
+     */
+    public synchronized List<String> search(String query, int limit) {
+        HashMap<String, Integer> terms = new HashMap<>();
+        count(query, 1, terms);
+        int liveCount = live.size();
+        if (terms.isEmpty() || liveCount == 0 || limit <= 0) { return List.of(); }
+
+        float[] scores = new float[documents];
+        int[] touched = new int[documents]; //documents with a score, so only they are ranked
+        int touchedCount = 0;
+        double averageLength = (double) liveLength / liveCount;
+        for (String term : terms.keySet()) {
+            Postings p = words.get(term);
+            if (p == null) { continue; }
+            //document counts include deleted documents until the next compaction, which only slightly skews rarity
+            int df = Math.min(p.documents, liveCount);
+            double idf = Math.log(1 + (liveCount - df + 0.5) / (df + 0.5));
+            int at = 0;
+            int doc = -1;
+            while (at < p.size) {
+                long gap = p.read(at);
+                at = p.next;
+                long tf = p.read(at);
+                at = p.next;
+                doc += (int) gap;
+                if (deleted.get(doc)) { continue; }
+                double norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                if (scores[doc] == 0) { touched[touchedCount++] = doc; }
+                scores[doc] += (float) (idf * tf * (K1 + 1) / (tf + norm));
+            }
+        }
+
+        //keep the best limit documents in a heap of document ids with the worst on top
+        int[] heap = new int[Math.min(limit, touchedCount)];
+        int heapSize = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            if (heapSize < heap.length) {
+                heap[heapSize++] = doc;
+                siftUp(heap, heapSize - 1, scores);
+            } else if (worse(heap[0], doc, scores)) {
+                heap[0] = doc;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+        String[] ranked = new String[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            ranked[i] = keys[heap[0]];
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
+        }
+        return Arrays.asList(ranked);
+    }
+
+    /**
+     * @return  true if document x ranks below document y, ties going to the earlier document
+     */
+    private static boolean worse(int x, int y, float[] scores) {
+        return scores[x] != scores[y] ? scores[x] < scores[y] : x > y;
+    }
+
+    private static void siftUp(int[] heap, int at, float[] scores) {
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (!worse(heap[at], heap[parent], scores)) { return; }
+            int temp = heap[at];
+            heap[at] = heap[parent];
+            heap[parent] = temp;
+            at = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, float[] scores) {
+        int at = 0;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) { return; }
+            if (child + 1 < size && worse(heap[child + 1], heap[child], scores)) { child++; }
+            if (!worse(heap[child], heap[at], scores)) { return; }
+            int temp = heap[at];
+            heap[at] = heap[child];
+            heap[child] = temp;
+            at = child;
+        }
+    }
+
+    /**
+     * Drop the deleted documents, renumbering the rest and rewriting every postings list. Must hold the lock.
+     */
+    private void compact() {
+        int[] renumbered = new int[documents];
+        int kept = 0;
+        for (int i = 0; i < documents; i++) {
+            if (deleted.get(i)) {
+                renumbered[i] = -1;
+                continue;
+            }
+            renumbered[i] = kept;
+            keys[kept] = keys[i];
+            lengths[kept] = lengths[i];
+            live.put(keys[kept], kept);
+            kept++;
+        }
+        Arrays.fill(keys, kept, documents, null);
+        HashMap<String, Postings> compacted = new HashMap<>();
+        for (Map.Entry<String, Postings> e : words.entrySet()) {
+            Postings p = e.getValue();
+            Postings q = new Postings();
+            int at = 0;
+            int doc = -1;
+            while (at < p.size) {
+                doc += (int) p.read(at);
+                long tf = p.read(p.next);
+                at = p.next;
+                if (renumbered[doc] != -1) { q.add(renumbered[doc], (int) tf); }
+            }
+            if (q.documents > 0) { compacted.put(e.getKey(), q); }
+        }
+        words = compacted;
+        documents = kept;
+        deleted.clear();
+    }
+
+    /**
+     * Add up the words in some text.
+     * @param text  Text to split into words
+     * @param weight    Amount to count each word as
+     * @param counts    Weighted count of each word so far, added to
+     * @return  weighted number of words counted
+     */
+    private static int count(String text, int weight, Map<String, Integer> counts) {
+        if (text == null) { return 0; }
+        int counted = 0;
+        for (String word : tokenize(text)) {
+            counts.merge(word, weight, Integer::sum);
+            counted += weight;
+        }
+        return counted;
+    }
+
+    /**
+     * Split text into normalised words: lower cased, without accents, without common words, and singular.
+     * @param text  Text to split
+     * @return  the words in order
+     */
+    private static List<String> tokenize(String text) {
+        text = stripAccents(text);
+        List<String> found = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                String w = word.toString();
+                if (!STOP_WORDS.contains(w)) { found.add(singular(w)); }
+                word.setLength(0);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param text  Text which may have accented letters
+     * @return  the text with every accent removed from its letters
+     */
+    static String stripAccents(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                //split accented letters into the letter and its accent, then drop the accents
+                return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Cut an English plural back to its singular, e.g. tomatoes, berries and eggs to tomato, berry and egg.
+     * Only the common endings are handled, and words ending in ss are left alone.
+     */
+    static String singular(String w) {
+        int n = w.length();
+        if (n <= 3 || w.charAt(n - 1) != 's' || w.endsWith("ss")) { return w; }
+        if (w.endsWith("ies")) { return w.substring(0, n - 3) + "y"; }
+        if (w.endsWith("oes") || w.endsWith("ches") || w.endsWith("shes") || w.endsWith("xes")) {
+            return w.substring(0, n - 2);
+        }
+        return w.substring(0, n - 1);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) { throw new IOException("Full text index is damaged"); }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Documents with one word, in id order, as varint pairs of the gap from the previous document and the word's
+     * weighted count in the document.
+     */
+    private static final class Postings {
+        private byte[] bytes = new byte[8];
+        private int size;
+        private int documents;
+        private int last = -1; //id of the last document added
+        private int next; //where the varint after the last one read starts
+
+        private void add(int doc, int count) {
+            write(doc - last);
+            write(count);
+            last = doc;
+            documents++;
+        }
+
+        private void write(int value) {
+            if (size + 5 > bytes.length) { bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 5)); }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Read a varint, leaving where the next one starts in next. Only used under the index's lock.
+         */
+        private long read(int at) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[at++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    next = at;
+                    return value;
+                }
+            }
+        }
+    }
+}
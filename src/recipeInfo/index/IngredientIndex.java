@@ -0,0 +1,384 @@
+package recipeInfo.index;
+
+import recipeInfo.Recipe;
+import recipeInfo.recipeContents.Ingredient;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Inverted index from ingredients to the recipes which use them, for finding what can be cooked from a pantry.
+ * Ingredient names are normalised (lower cased, without accents or punctuation, each word singular) and interned as
+ * int ids, and each id holds a CompressedBitmap of the recipes using it. A pantry query counts, for every recipe,
+ * how many of its ingredients are in the pantry by walking the bitmaps of the pantry's ingredients into a count array,
+ * so it costs the pantry's postings plus one pass over the counts, however large the pantry and the library.
+ *
+ * Each recipe is a document, found by a key. Removing a recipe only marks its document deleted, and deleted documents
+ * are dropped once they outnumber the live ones, or when the index is written. Safe to use from several threads.
+ *
+ * File layout, big endian:
+ * header (magic int, version int, document count int),
+ * documents (key as a length int and UTF-8 bytes, ingredient count int),
+ * ingredients (count int, then each name as a length int and UTF-8 bytes, recipe count int, then each document int).
+ */
+public class IngredientIndex {
+    private static final int MAGIC = 0x52494E47; //"RING"
+    private static final int VERSION = 1;
+    private static final int MIN_COMPACTION = 1024; //deleted documents worth rebuilding the bitmaps for
+
+    private final HashMap<String, Integer> ids = new HashMap<>(); //normalised name -> id
+    private final ArrayList<String> names = new ArrayList<>();
+    private ArrayList<CompressedBitmap> postings = new ArrayList<>(); //documents using each ingredient, by id
+
+    private String[] keys = new String[64]; //key of each document, by document id
+    private int[] needed = new int[64]; //number of different ingredients each document uses
+    private int documents;
+    private final BitSet deleted = new BitSet();
+    private final HashMap<String, Integer> live = new HashMap<>(); //key -> id of its live document
+
+    /**
+     * Read an index written by write.
+     * @param file  File to read
+     * @return  the index, or an empty one if the file doesn't exist
+     * @throws IOException if the file can't be read or isn't an index
+     */
+    public static IngredientIndex open(File file) throws IOException {
+        IngredientIndex index = new IngredientIndex();
+        if (!file.exists()) { return index; }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) { throw new IOException("Not an ingredient index"); }
+            int count = in.readInt();
+            if (count < 0) { throw new IOException("Ingredient index is damaged"); }
+            index.keys = new String[Math.max(count, 64)];
+            index.needed = new int[index.keys.length];
+            for (int i = 0; i < count; i++) {
+                index.keys[i] = readString(in);
+                index.needed[i] = in.readInt();
+                index.live.put(index.keys[i], i);
+            }
+            index.documents = count;
+            for (int i = in.readInt(); i > 0; i--) {
+                CompressedBitmap used = new CompressedBitmap();
+                String name = readString(in);
+                for (int j = in.readInt(); j > 0; j--) {
+                    int doc = in.readInt();
+                    if (doc < 0 || doc >= count) { throw new IOException("Ingredient index is damaged"); }
+                    used.add(doc);
+                }
+                index.ids.put(name, index.names.size());
+                index.names.add(name);
+                index.postings.add(used);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Write the index, without its deleted documents, replacing the old file only once the new one is complete.
+     * @param file  File to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        byte[] encoded;
+        synchronized (this) {
+            if (!deleted.isEmpty()) { compact(); }
+            encoded = encode();
+        }
+        //the copy is written and synced without the lock, so pantry queries never wait on the disk
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(encoded);
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copy the index into the file format. Must hold the lock.
+     */
+    private byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(documents);
+            for (int i = 0; i < documents; i++) {
+                writeString(out, keys[i]);
+                out.writeInt(needed[i]);
+            }
+            out.writeInt(names.size());
+            for (int id = 0; id < names.size(); id++) {
+                CompressedBitmap used = postings.get(id);
+                writeString(out, names.get(id));
+                out.writeInt(used.cardinality());
+                for (int doc = used.nextSetBit(0); doc >= 0; doc = used.nextSetBit(doc + 1)) { out.writeInt(doc); }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return  number of recipes indexed
+     */
+    public synchronized int size() { return live.size(); }
+
+    /**
+     * @param key   Key of a recipe
+     * @return  true if a recipe is indexed under the key
+     */
+    public synchronized boolean contains(String key) { return live.containsKey(key); }
+
+    /**
+     * Index the ingredients of a recipe, unless one is already indexed under its key.
+     * @param key   Key to find the recipe by, e.g. its name
+     * @param r Recipe to index
+     * @return  true if it was indexed, false if the key was taken
+     */
+    public boolean add(String key, Recipe r) {
+        HashSet<String> used = new HashSet<>();
+        for (Ingredient i : r.getIngredients()) {
+            String name = normalise(i.getIngredient());
+            if (!name.isEmpty()) { used.add(name); }
+        }
+
+        synchronized (this) {
+            if (live.containsKey(key)) { return false; }
+            if (documents == keys.length) {
+                keys = Arrays.copyOf(keys, documents * 2);
+                needed = Arrays.copyOf(needed, documents * 2);
+            }
+            int doc = documents++;
+            keys[doc] = key;
+            needed[doc] = used.size();
+            live.put(key, doc);
+            for (String name : used) {
+                Integer id = ids.get(name);
+                if (id == null) {
+                    id = names.size();
+                    ids.put(name, id);
+                    names.add(name);
+                    postings.add(new CompressedBitmap());
+                }
+                postings.get(id).add(doc);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stop finding the recipe under a key.
+     * @param key   Key of the recipe
+     * @return  true if a recipe was indexed under the key
+     */
+    public synchronized boolean remove(String key) {
+        Integer doc = live.remove(key);
+        if (doc == null) { return false; }
+        deleted.set(doc);
+        if (deleted.cardinality() >= MIN_COMPACTION && deleted.cardinality() > live.size()) { compact(); }
+        return true;
+    }
+
+    /**
+     * Stop finding every recipe whose key matches, e.g. ones a saved index holds which are no longer in the book.
+     * @param matches   Test for keys to remove
+     */
+    public synchronized void removeIf(Predicate<String> matches) {
+        for (String key : new ArrayList<>(live.keySet())) {
+            if (matches.test(key)) { remove(key); }
+        }
+    }
+
+    /**
+     * Find the recipes which can be cooked, or nearly, from a pantry. Recipes are ranked by coverage, the share of
+     * their ingredients the pantry has, then by fewest missing, then by the order they were added.
+     * Recipes without ingredients are never found.
+     * @param pantry    Names of the ingredients to hand, matched against ingredient names once both are normalised
+     * @param maxMissing    Most ingredients a recipe can need which aren't in the pantry
+     * @param limit Most recipes wanted
+     * @return  the best recipes, best first
+     */
+    public synchronized List<Match> canCook(Collection<String> pantry, int maxMissing, int limit) {
+        if (limit <= 0 || maxMissing < 0) { return List.of(); }
+        int[] have = new int[documents];
+        HashSet<Integer> seen = new HashSet<>();
+        for (String item : pantry) {
+            Integer id = ids.get(normalise(item));
+            if (id == null || !seen.add(id)) { continue; }
+            postings.get(id).forEach(doc -> have[doc]++);
+        }
+
+        //keep the best limit documents in a heap of document ids with the worst on top
+        int[] heap = new int[Math.min(limit, documents)];
+        int heapSize = 0;
+        for (int doc = 0; doc < documents; doc++) {
+            if (needed[doc] == 0 || needed[doc] - have[doc] > maxMissing || deleted.get(doc)) { continue; }
+            if (heapSize < heap.length) {
+                heap[heapSize++] = doc;
+                siftUp(heap, heapSize - 1, have);
+            } else if (worse(heap[0], doc, have)) {
+                heap[0] = doc;
+                siftDown(heap, heapSize, have);
+            }
+        }
+        Match[] ranked = new Match[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            int doc = heap[0];
+            ranked[i] = new Match(keys[doc], have[doc], needed[doc]);
+            heap[0] = heap[i];
+            siftDown(heap, i, have);
+        }
+        return Arrays.asList(ranked);
+    }
+
+    /**
+     * @return  true if document x ranks below document y
+     */
+    private boolean worse(int x, int y, int[] have) {
+        //compare have/needed without dividing
+        long coverage = (long) have[x] * needed[y] - (long) have[y] * needed[x];
+        if (coverage != 0) { return coverage < 0; }
+        int missingX = needed[x] - have[x];
+        int missingY = needed[y] - have[y];
+        return missingX != missingY ? missingX > missingY : x > y;
+    }
+
+    private void siftUp(int[] heap, int at, int[] have) {
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (!worse(heap[at], heap[parent], have)) { return; }
+            int temp = heap[at];
+            heap[at] = heap[parent];
+            heap[parent] = temp;
+            at = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size, int[] have) {
+        int at = 0;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) { return; }
+            if (child + 1 < size && worse(heap[child + 1], heap[child], have)) { child++; }
+            if (!worse(heap[child], heap[at], have)) { return; }
+            int temp = heap[at];
+            heap[at] = heap[child];
+            heap[child] = temp;
+            at = child;
+        }
+    }
+
+    /**
+     * Drop the deleted documents, renumbering the rest and rebuilding every bitmap. Ingredients no recipe uses any
+     * more keep their ids. Must hold the lock.
+     */
+    private void compact() {
+        int[] renumbered = new int[documents];
+        int kept = 0;
+        for (int i = 0; i < documents; i++) {
+            if (deleted.get(i)) {
+                renumbered[i] = -1;
+                continue;
+            }
+            renumbered[i] = kept;
+            keys[kept] = keys[i];
+            needed[kept] = needed[i];
+            live.put(keys[kept], kept);
+            kept++;
+        }
+        Arrays.fill(keys, kept, documents, null);
+        ArrayList<CompressedBitmap> compacted = new ArrayList<>(postings.size());
+        for (CompressedBitmap used : postings) {
+            CompressedBitmap c = new CompressedBitmap();
+            for (int doc = used.nextSetBit(0); doc >= 0; doc = used.nextSetBit(doc + 1)) {
+                if (renumbered[doc] != -1) { c.add(renumbered[doc]); }
+            }
+            compacted.add(c);
+        }
+        postings = compacted;
+        documents = kept;
+        deleted.clear();
+    }
+
+    /**
+     * Normalise an ingredient name, so e.g. "Cherry Tomatoes" and "cherry tomato" are the same ingredient.
+     * @param name  Name of an ingredient
+     * @return  the name lower cased, without accents, with its words singular and separated by single spaces
+     */
+    public static String normalise(String name) {
+        if (name == null) { return ""; }
+        String text = FullTextIndex.stripAccents(name).toLowerCase(Locale.ROOT);
+        StringBuilder normalised = new StringBuilder(text.length());
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start == -1) {
+                start = i;
+            } else if (!inWord && start != -1) {
+                if (normalised.length() > 0) { normalised.append(' '); }
+                normalised.append(FullTextIndex.singular(text.substring(start, i)));
+                start = -1;
+            }
+        }
+        return normalised.toString();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) { throw new IOException("Ingredient index is damaged"); }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A recipe found by a pantry query, with how many of its ingredients the pantry has.
+     */
+    public static final class Match {
+        private final String key;
+        private final int have;
+        private final int needed;
+
+        /**
+         * @param key   Key of the recipe, e.g. its name
+         * @param have  Number of its ingredients in the pantry
+         * @param needed    Number of different ingredients it uses
+         */
+        public Match(String key, int have, int needed) {
+            this.key = key;
+            this.have = have;
+            this.needed = needed;
+        }
+
+        public String getKey() { return key; }
+
+        public int getHave() { return have; }
+
+        public int getNeeded() { return needed; }
+
+        public int getMissing() { return needed - have; }
+    }
+}
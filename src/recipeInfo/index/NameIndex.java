@@ -0,0 +1,100 @@
+package recipeInfo.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Trigram index over recipe names, for finding every name containing some text, ignoring case.
+ * Each run of three characters in a lower cased name holds a sorted list of the ordinals of the names it appears in.
+ * A search only checks the names in the shortest list of the query's trigrams, or every name for queries shorter
+ * than a trigram, and when the query extends an earlier one it can check just the earlier matches instead,
+ * whichever is fewer. Names are added in ordinal order.
+ */
+public class NameIndex {
+    private static final int[] NONE = new int[0];
+
+    private String[] keys = new String[1024]; //lower cased names by ordinal
+    private int size;
+    private final HashMap<Long, Postings> trigrams = new HashMap<>();
+
+    /**
+     * Add the next name, which takes the next ordinal.
+     * @param name  Name to add
+     */
+    public void add(String name) {
+        if (size == keys.length) { keys = Arrays.copyOf(keys, size * 2); }
+        String key = name.toLowerCase(Locale.ROOT);
+        int ordinal = size++;
+        keys[ordinal] = key;
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            //a name with a trigram twice already has this ordinal last in the list
+            trigrams.computeIfAbsent(trigram(key, i), k -> new Postings()).add(ordinal);
+        }
+    }
+
+    public int size() { return size; }
+
+    /**
+     * Find every name containing a query, ignoring case.
+     * @param query Text to look for
+     * @param narrowing Ordinals matching an earlier query which this query contains, which every match must be
+     *                  among, or null to search all names
+     * @return  ordinals of the matching names, in order
+     */
+    public int[] search(String query, int[] narrowing) {
+        String key = query.toLowerCase(Locale.ROOT);
+        int[] candidates = narrowing;
+        int count = narrowing == null ? size : narrowing.length;
+        for (int i = 0; i + 3 <= key.length(); i++) {
+            Postings p = trigrams.get(trigram(key, i));
+            if (p == null) { return NONE; } //no name has this trigram
+            if (p.size < count) {
+                candidates = p.ordinals;
+                count = p.size;
+            }
+        }
+
+        int[] found = new int[count];
+        int matches = 0;
+        for (int i = 0; i < count; i++) {
+            int ordinal = candidates == null ? i : candidates[i];
+            if (keys[ordinal].contains(key)) { found[matches++] = ordinal; }
+        }
+        return matches == count ? found : Arrays.copyOf(found, matches);
+    }
+
+    /**
+     * Find the names containing a query among those added since some ordinal, e.g. to keep a search up to date.
+     * @param query Text to look for
+     * @param from  First ordinal to check
+     * @return  ordinals of the matching names, in order
+     */
+    public int[] searchFrom(String query, int from) {
+        String key = query.toLowerCase(Locale.ROOT);
+        int[] found = new int[Math.max(size - from, 0)];
+        int matches = 0;
+        for (int ordinal = from; ordinal < size; ordinal++) {
+            if (keys[ordinal].contains(key)) { found[matches++] = ordinal; }
+        }
+        return Arrays.copyOf(found, matches);
+    }
+
+    private static long trigram(String key, int at) {
+        return (long) key.charAt(at) << 32 | (long) key.charAt(at + 1) << 16 | key.charAt(at + 2);
+    }
+
+    /**
+     * Ordinals of the names with one trigram, in order.
+     */
+    private static final class Postings {
+        private int[] ordinals = new int[4];
+        private int size;
+
+        private void add(int ordinal) {
+            if (size > 0 && ordinals[size - 1] == ordinal) { return; }
+            if (size == ordinals.length) { ordinals = Arrays.copyOf(ordinals, size * 2); }
+            ordinals[size++] = ordinal;
+        }
+    }
+}
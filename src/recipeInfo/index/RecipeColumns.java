@@ -0,0 +1,115 @@
+package recipeInfo.index;
+
+import recipeInfo.recipeContents.InfoBlock;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column store of the numeric recipe info used when filtering recipes.
+ * Holds serves and times (in minutes) in parallel int arrays indexed by recipe ordinal, so filters can run as
+ * plain array loops instead of going through Recipe, InfoBlock and Duration objects.
+ * An instance never changes once built. Appending writes past the end of the arrays it shares with the previous
+ * instance and returns a longer view, so readers of older instances are never disturbed. Only the newest instance
+ * should be appended to.
+ */
+public class RecipeColumns {
+    private final int[] serves;
+    private final int[] prepMinutes;
+    private final int[] cookMinutes;
+    private final int[] totalMinutes;
+    private final int size;
+
+    public RecipeColumns() {
+        this(new int[16], new int[16], new int[16], new int[16], 0);
+    }
+
+    private RecipeColumns(int[] serves, int[] prepMinutes, int[] cookMinutes, int[] totalMinutes, int size) {
+        this.serves = serves;
+        this.prepMinutes = prepMinutes;
+        this.cookMinutes = cookMinutes;
+        this.totalMinutes = totalMinutes;
+        this.size = size;
+    }
+
+    /**
+     * Append the info of the next recipes.
+     * @param infos Info blocks of the recipes, in ordinal order
+     * @return  columns holding this instance's recipes followed by the new ones
+     */
+    public RecipeColumns append(List<InfoBlock> infos) {
+        int newSize = size + infos.size();
+        int[] s = serves;
+        int[] p = prepMinutes;
+        int[] c = cookMinutes;
+        int[] t = totalMinutes;
+        if (newSize > s.length) {
+            int capacity = Math.max(newSize, s.length * 2);
+            s = Arrays.copyOf(s, capacity);
+            p = Arrays.copyOf(p, capacity);
+            c = Arrays.copyOf(c, capacity);
+            t = Arrays.copyOf(t, capacity);
+        }
+        for (int i = 0; i < infos.size(); i++) {
+            InfoBlock info = infos.get(i);
+            int ordinal = size + i;
+            s[ordinal] = info.getServes();
+            p[ordinal] = toMinutes(info.getPrepTime().toMinutes());
+            c[ordinal] = toMinutes(info.getCookTime().toMinutes());
+            t[ordinal] = toMinutes((long) p[ordinal] + c[ordinal]);
+        }
+        return new RecipeColumns(s, p, c, t, newSize);
+    }
+
+    /**
+     * Clamp a number of minutes to an int.
+     * @param minutes   Minutes to clamp
+     * @return  minutes as an int
+     */
+    public static int toMinutes(long minutes) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, minutes));
+    }
+
+    public int size() { return size; }
+
+    public int getServes(int ordinal) { return serves[ordinal]; }
+
+    public int getPrepMinutes(int ordinal) { return prepMinutes[ordinal]; }
+
+    public int getCookMinutes(int ordinal) { return cookMinutes[ordinal]; }
+
+    public int getTotalMinutes(int ordinal) { return totalMinutes[ordinal]; }
+
+    /**
+     * Check a recipe against the serves and time qualifiers.
+     * @param ordinal   Ordinal of the recipe
+     * @param numServes Number of serves required, 0 for any
+     * @param maxMinutes    Max total time in minutes, under 1 for any
+     * @return  true if the recipe qualifies
+     */
+    public boolean matches(int ordinal, int numServes, int maxMinutes) {
+        return (numServes == 0 || serves[ordinal] == numServes) && (maxMinutes < 1 || totalMinutes[ordinal] <= maxMinutes);
+    }
+
+    /**
+     * Find the next recipe at or after an ordinal which meets the qualifiers.
+     * Each combination of qualifiers gets its own loop so the loop body is a single compare.
+     * @param from  Ordinal to start from
+     * @param numServes Number of serves required, 0 for any
+     * @param maxMinutes    Max total time in minutes, under 1 for any
+     * @return  the ordinal of the next match, or -1 if there are none
+     */
+    public int nextMatch(int from, int numServes, int maxMinutes) {
+        int i = from;
+        if (numServes == 0 && maxMinutes < 1) {
+            return i < size ? i : -1;
+        } else if (numServes == 0) {
+            while (i < size && totalMinutes[i] > maxMinutes) { i++; }
+        } else if (maxMinutes < 1) {
+            while (i < size && serves[i] != numServes) { i++; }
+        } else {
+            while (i < size && (serves[i] != numServes || totalMinutes[i] > maxMinutes)) { i++; }
+        }
+        return i < size ? i : -1;
+    }
+}
@@ -0,0 +1,151 @@
+package recipeInfo.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Inverted index from tags to the recipes which have them.
+ * Every tag is given an int id, and holds a CompressedBitmap of the ordinals (position in the RecipeBook) of the
+ * recipes tagged with it, so recipes with several tags can be found by intersecting bitmaps.
+ * Copies are cheap: bitmaps are shared with the original until the copy first adds to them, so a RecipeBook can
+ * build the next version of its index while readers keep using the current one.
+ */
+public class TagIndex {
+    private final HashMap<String, Integer> tagIds;
+    private final ArrayList<String> tagNames;
+    private final ArrayList<CompressedBitmap> postings;
+    private final BitSet owned; //ids of the bitmaps this index may change in place
+
+    public TagIndex() {
+        tagIds = new HashMap<>();
+        tagNames = new ArrayList<>();
+        postings = new ArrayList<>();
+        owned = new BitSet();
+    }
+
+    private TagIndex(TagIndex base) {
+        tagIds = new HashMap<>(base.tagIds);
+        tagNames = new ArrayList<>(base.tagNames);
+        postings = new ArrayList<>(base.postings);
+        owned = new BitSet();
+    }
+
+    /**
+     * Copy the index, sharing bitmaps until they are added to.
+     * @return  an index which can be changed without affecting this one
+     */
+    public TagIndex copy() {
+        return new TagIndex(this);
+    }
+
+    /**
+     * Record the tags of a recipe.
+     * @param ordinal   Ordinal of the recipe
+     * @param tags  Tags the recipe has
+     */
+    public void add(int ordinal, List<String> tags) {
+        for (String tag : tags) {
+            Integer id = tagIds.get(tag);
+            if (id == null) {
+                id = tagNames.size();
+                tagIds.put(tag, id);
+                tagNames.add(tag);
+                postings.add(new CompressedBitmap());
+                owned.set(id);
+            } else if (!owned.get(id)) {
+                postings.set(id, postings.get(id).copy());
+                owned.set(id);
+            }
+            postings.get(id).add(ordinal);
+        }
+    }
+
+    /**
+     * @param tag   Tag to look up
+     * @return  id of the tag, or -1 if no recipe has it
+     */
+    public int getTagId(String tag) {
+        Integer id = tagIds.get(tag);
+        return id == null ? -1 : id;
+    }
+
+    public String getTagName(int id) { return tagNames.get(id); }
+
+    /**
+     * @return  number of tags, whose ids run from 0
+     */
+    public int size() { return tagNames.size(); }
+
+    /**
+     * @param id    Id of a tag
+     * @return  ordinals of the recipes with that tag
+     */
+    public CompressedBitmap getRecipesWith(int id) { return postings.get(id); }
+
+    /**
+     * Find the recipes which have every one of the given tags.
+     * Bitmaps are intersected smallest first, so the working set only shrinks.
+     * @param tags  Tags the recipes must have, must not be empty
+     * @return  ordinals of the matching recipes
+     */
+    public CompressedBitmap getRecipesWithAll(List<String> tags) {
+        CompressedBitmap[] sets = new CompressedBitmap[tags.size()];
+        for (int i = 0; i < sets.length; i++) {
+            int id = getTagId(tags.get(i));
+            if (id == -1) { return new CompressedBitmap(); } //an unknown tag can't match anything
+            sets[i] = postings.get(id);
+        }
+        CompressedBitmap result = smallest(sets);
+        for (CompressedBitmap set : sets) {
+            if (set == result) { continue; }
+            result = CompressedBitmap.and(result, set);
+            if (result.isEmpty()) { break; }
+        }
+        return result;
+    }
+
+    /**
+     * Get the bitmap of the rarest of the given tags, which is the cheapest set to walk when looking for recipes
+     * with all of them.
+     * @param tags  Tags the recipes must have, must not be empty
+     * @return  the smallest bitmap, or null if one of the tags is unknown
+     */
+    public CompressedBitmap getRarest(List<String> tags) {
+        CompressedBitmap rarest = null;
+        for (int i = 0; i < tags.size(); i++) {
+            int id = getTagId(tags.get(i));
+            if (id == -1) { return null; }
+            if (rarest == null || postings.get(id).cardinality() < rarest.cardinality()) { rarest = postings.get(id); }
+        }
+        return rarest;
+    }
+
+    /**
+     * Check whether a recipe has every one of the given tags.
+     * @param ordinal   Ordinal of the recipe
+     * @param tags  Tags the recipe must have
+     * @return  true if it has all of them
+     */
+    public boolean hasAll(int ordinal, List<String> tags) {
+        for (int i = 0; i < tags.size(); i++) {
+            int id = getTagId(tags.get(i));
+            if (id == -1 || !postings.get(id).contains(ordinal)) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Get the smallest of a group of bitmaps, i.e. the cheapest to walk.
+     * @param sets  Bitmaps to choose from
+     * @return  the bitmap with the fewest values
+     */
+    static CompressedBitmap smallest(CompressedBitmap[] sets) {
+        CompressedBitmap smallest = sets[0];
+        for (CompressedBitmap set : sets) {
+            if (set.cardinality() < smallest.cardinality()) { smallest = set; }
+        }
+        return smallest;
+    }
+}
@@ -15,6 +15,11 @@ public class Ingredient {
 		this.ingredient = ingredient;
 	}
 
+	public Ingredient(Measurement measurement, String ingredient) {
+		this.measurement = measurement;
+		this.ingredient = ingredient;
+	}
+
 	public String getIngredient() { return ingredient; }
 
 	public Measurement getMeasurement() { return measurement; }
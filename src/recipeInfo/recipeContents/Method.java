@@ -16,6 +16,8 @@ public class Method {
 
     public void addStep(Step i) { steps.add(i); }
 
+    public List<Step> getSteps() { return steps; }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
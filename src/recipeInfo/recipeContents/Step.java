@@ -13,6 +13,10 @@ public class Step {
         this.stepNumber = num;
     }
 
+    public String getStep() { return step; }
+
+    public int getStepNumber() { return stepNumber; }
+
     public void setStepNumber(int stepNumber) {
         this.stepNumber = stepNumber;
     }
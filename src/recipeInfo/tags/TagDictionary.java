@@ -0,0 +1,403 @@
+package recipeInfo.tags;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
+
+import recipeInfo.GenerationalFile;
+
+/**
+ * Read only dictionary of tags and how many recipes use them, kept in a file and memory mapped rather than rebuilt.
+ * Tags are held in a minimal acyclic automaton, which shares common prefixes and suffixes between tags. Each arc
+ * carries the number of tags sorted before the ones it leads to, so walking a tag through the automaton sums to
+ * its position in sorted order, its id, and walking the other way turns an id back into the tag. The tags with a
+ * prefix have a contiguous range of ids, so the most used ones are found with a max segment tree over the counts.
+ *
+ * File layout, all big endian ints:
+ * header (magic, version, state count, arc count, tag count),
+ * states (first arc, arc count with the top bit set for accepting states, number of tags accepted from here),
+ * arcs sorted by label within each state (label, target state, tags sorted before its target),
+ * counts by id, then the segment tree of ids with the highest count in each range.
+ * The file is saved in generations, so the one mapped is never replaced while in use.
+ */
+public class TagDictionary {
+	private static final int MAGIC = 0x52544147; //"RTAG"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 20;
+	private static final int STATE_BYTES = 12;
+	private static final int ARC_BYTES = 12;
+	private static final int FINAL = 1 << 31;
+
+	private final ByteBuffer buf;
+	private final int states;
+	private final int arcs;
+	private final int size;
+	private final int leaves; //number of leaves in the segment tree, a power of two
+
+	private TagDictionary(ByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+			throw new IOException("Not a tag dictionary");
+		}
+		states = buf.getInt(8);
+		arcs = buf.getInt(12);
+		size = buf.getInt(16);
+		leaves = leavesFor(size);
+		long expected = (long) HEADER_BYTES + (long) states * STATE_BYTES + (long) arcs * ARC_BYTES
+				+ 4L * size + 8L * leaves;
+		if (states < 1 || arcs < 0 || size < 0 || buf.capacity() != expected) {
+			throw new IOException("Tag dictionary is truncated");
+		}
+	}
+
+	/**
+	 * @return  a dictionary with no tags
+	 */
+	public static TagDictionary empty() {
+		try {
+			return new TagDictionary(build(new TreeMap<>()));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Memory map a dictionary file.
+	 * @param file  File written by write
+	 * @return  the dictionary, or an empty one if none has been saved
+	 * @throws IOException if the file can't be read or isn't a dictionary
+	 */
+	public static TagDictionary open(File file) throws IOException {
+		File current = new GenerationalFile(file).current();
+		if (current == null) { return empty(); }
+		try (FileChannel channel = FileChannel.open(current.toPath(), StandardOpenOption.READ)) {
+			return new TagDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Build a dictionary and write it as the file's next generation, which becomes current only once it is complete.
+	 * The previous generation is left in place if it is still mapped.
+	 * @param file  File to write
+	 * @param counts    Every tag, with the number of recipes using it
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(File file, SortedMap<String, Integer> counts) throws IOException {
+		ByteBuffer b = build(counts);
+		GenerationalFile generations = new GenerationalFile(file);
+		File next = generations.next();
+		try (FileChannel channel = FileChannel.open(next.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (b.hasRemaining()) { channel.write(b); }
+			channel.force(true);
+		}
+		generations.commit(next);
+	}
+
+	public int size() { return size; }
+
+	/**
+	 * @param tag   Tag to look up
+	 * @return  id of the tag, its position in sorted order, or -1 if it isn't in the dictionary
+	 */
+	public int getId(String tag) {
+		int state = 0;
+		int id = 0;
+		for (int i = 0; i < tag.length(); i++) {
+			int arc = findArc(state, tag.charAt(i));
+			if (arc == -1) { return -1; }
+			id += arcBefore(arc);
+			state = arcTarget(arc);
+		}
+		return isFinal(state) ? id : -1;
+	}
+
+	/**
+	 * @param id    Id of a tag
+	 * @return  the tag
+	 */
+	public String getTag(int id) {
+		if (id < 0 || id >= size) { throw new IndexOutOfBoundsException("No tag " + id); }
+		StringBuilder b = new StringBuilder();
+		int state = 0;
+		while (!(isFinal(state) && id == 0)) {
+			//the arc to take is the last one with no more tags before it than the id
+			int lo = firstArc(state);
+			int hi = lo + arcCount(state) - 1;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (arcBefore(mid) <= id) {
+					lo = mid;
+				} else {
+					hi = mid - 1;
+				}
+			}
+			id -= arcBefore(lo);
+			b.append(arcLabel(lo));
+			state = arcTarget(lo);
+		}
+		return b.toString();
+	}
+
+	/**
+	 * @param id    Id of a tag
+	 * @return  number of recipes using the tag
+	 */
+	public int getCount(int id) {
+		return buf.getInt(countsStart() + 4 * id);
+	}
+
+	/**
+	 * @param tag   Tag to look up
+	 * @return  number of recipes using the tag, 0 if it isn't in the dictionary
+	 */
+	public int getCount(String tag) {
+		int id = getId(tag);
+		return id == -1 ? 0 : getCount(id);
+	}
+
+	/**
+	 * Get the most used tags starting with a prefix, in O(k log n) for k tags.
+	 * The range of ids under the prefix is split around its most used tag, and the parts queued by their own most
+	 * used tag, so each tag returned costs one range max query.
+	 * @param prefix    Prefix to search for
+	 * @param limit Max number of tags wanted
+	 * @return  up to limit tags, most used first, then alphabetical
+	 */
+	public List<String> suggest(String prefix, int limit) {
+		int state = 0;
+		int from = 0;
+		for (int i = 0; i < prefix.length(); i++) {
+			int arc = findArc(state, prefix.charAt(i));
+			if (arc == -1) { return List.of(); }
+			from += arcBefore(arc);
+			state = arcTarget(arc);
+		}
+		int to = from + stateWords(state);
+
+		List<String> best = new ArrayList<>(Math.min(limit, to - from));
+		PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> ranksBefore(a[2], b[2]) ? -1 : 1);
+		if (from < to) { ranges.add(new int[] {from, to, maxIn(from, to)}); }
+		while (!ranges.isEmpty() && best.size() < limit) {
+			int[] r = ranges.poll();
+			int id = r[2];
+			best.add(getTag(id));
+			if (r[0] < id) { ranges.add(new int[] {r[0], id, maxIn(r[0], id)}); }
+			if (id + 1 < r[1]) { ranges.add(new int[] {id + 1, r[1], maxIn(id + 1, r[1])}); }
+		}
+		return best;
+	}
+
+	/**
+	 * Call an action for every tag and its count, in sorted order.
+	 * @param action    Given each tag and the number of recipes using it
+	 */
+	public void forEach(ObjIntConsumer<String> action) {
+		for (int id = 0; id < size; id++) { action.accept(getTag(id), getCount(id)); }
+	}
+
+	private int firstArc(int state) { return buf.getInt(HEADER_BYTES + state * STATE_BYTES); }
+	private int arcCount(int state) { return buf.getInt(HEADER_BYTES + state * STATE_BYTES + 4) & ~FINAL; }
+	private boolean isFinal(int state) { return (buf.getInt(HEADER_BYTES + state * STATE_BYTES + 4) & FINAL) != 0; }
+	private int stateWords(int state) { return buf.getInt(HEADER_BYTES + state * STATE_BYTES + 8); }
+
+	private int arcsStart() { return HEADER_BYTES + states * STATE_BYTES; }
+	private char arcLabel(int arc) { return (char) buf.getInt(arcsStart() + arc * ARC_BYTES); }
+	private int arcTarget(int arc) { return buf.getInt(arcsStart() + arc * ARC_BYTES + 4); }
+	private int arcBefore(int arc) { return buf.getInt(arcsStart() + arc * ARC_BYTES + 8); }
+
+	private int countsStart() { return arcsStart() + arcs * ARC_BYTES; }
+	private int treeNode(int node) { return buf.getInt(countsStart() + 4 * size + 4 * node); }
+
+	/**
+	 * @return  the arc leaving the state with the label, or -1 if there isn't one
+	 */
+	private int findArc(int state, char label) {
+		int lo = firstArc(state);
+		int hi = lo + arcCount(state) - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char c = arcLabel(mid);
+			if (c < label) {
+				lo = mid + 1;
+			} else if (c > label) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return  the id with the highest count in [from, to), which must not be empty
+	 */
+	private int maxIn(int from, int to) {
+		int best = -1;
+		for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>>= 1, hi >>>= 1) {
+			if ((lo & 1) == 1) { best = better(best, treeNode(lo++)); }
+			if ((hi & 1) == 1) { best = better(best, treeNode(--hi)); }
+		}
+		return best;
+	}
+
+	private boolean ranksBefore(int a, int b) {
+		int ca = getCount(a);
+		int cb = getCount(b);
+		return ca != cb ? ca > cb : a < b; //ids are in sorted order, so lower ids are alphabetically first
+	}
+
+	private int better(int a, int b) {
+		if (a == -1) { return b; }
+		if (b == -1) { return a; }
+		return ranksBefore(a, b) ? a : b;
+	}
+
+	private static int leavesFor(int size) {
+		return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+	}
+
+	/**
+	 * Build the automaton with the incremental algorithm for sorted input (Daciuk et al.). After each tag, the
+	 * states only the previous tag used are complete, so each is swapped for an equivalent registered state if
+	 * there is one, or registered itself.
+	 */
+	private static ByteBuffer build(SortedMap<String, Integer> counts) {
+		HashMap<String, Node> register = new HashMap<>();
+		int nodes = 0;
+		Node root = new Node(nodes++);
+		String previous = "";
+		for (String tag : counts.keySet()) {
+			int common = 0;
+			while (common < Math.min(tag.length(), previous.length()) && tag.charAt(common) == previous.charAt(common)) {
+				common++;
+			}
+			Node node = root;
+			for (int i = 0; i < common; i++) { node = node.last(); }
+			if (node.arcs > 0) { minimise(node, register); }
+			for (int i = common; i < tag.length(); i++) { node = node.add(tag.charAt(i), nodes++); }
+			node.accepting = true;
+			previous = tag;
+		}
+		if (root.arcs > 0) { minimise(root, register); }
+
+		//number the states with the root first, and count the tags below each
+		IdentityHashMap<Node, Integer> ids = new IdentityHashMap<>();
+		ArrayList<Node> order = new ArrayList<>();
+		ids.put(root, 0);
+		order.add(root);
+		int arcTotal = 0;
+		for (int i = 0; i < order.size(); i++) {
+			Node n = order.get(i);
+			arcTotal += n.arcs;
+			for (int a = 0; a < n.arcs; a++) {
+				if (ids.putIfAbsent(n.targets[a], order.size()) == null) { order.add(n.targets[a]); }
+			}
+		}
+		for (int i = order.size() - 1; i >= 0; i--) { order.get(i).words(); }
+
+		int size = counts.size();
+		int leaves = leavesFor(size);
+		ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES + order.size() * STATE_BYTES + arcTotal * ARC_BYTES
+				+ 4 * size + 8 * leaves);
+		b.putInt(MAGIC).putInt(VERSION).putInt(order.size()).putInt(arcTotal).putInt(size);
+		int nextArc = 0;
+		for (Node n : order) {
+			b.putInt(nextArc).putInt(n.arcs | (n.accepting ? FINAL : 0)).putInt(n.words());
+			nextArc += n.arcs;
+		}
+		for (Node n : order) {
+			int before = n.accepting ? 1 : 0;
+			for (int a = 0; a < n.arcs; a++) {
+				b.putInt(n.labels[a]).putInt(ids.get(n.targets[a])).putInt(before);
+				before += n.targets[a].words();
+			}
+		}
+		int[] byId = new int[size];
+		int id = 0;
+		for (int count : counts.values()) { byId[id++] = count; }
+		for (int count : byId) { b.putInt(count); }
+
+		//segment tree of the best id in each range, leaves from index leaves up
+		int[] tree = new int[2 * leaves];
+		Arrays.fill(tree, -1);
+		for (int i = 0; i < size; i++) { tree[leaves + i] = i; }
+		for (int i = leaves - 1; i > 0; i--) {
+			int l = tree[2 * i];
+			int r = tree[2 * i + 1];
+			tree[i] = l == -1 ? r : r == -1 ? l : byId[r] > byId[l] ? r : l;
+		}
+		for (int node : tree) { b.putInt(node); }
+		b.flip();
+		return b;
+	}
+
+	/**
+	 * Swap the states along the most recent path below a node for registered equivalents, bottom up.
+	 */
+	private static void minimise(Node node, Map<String, Node> register) {
+		Node child = node.last();
+		if (child.arcs > 0) { minimise(child, register); }
+		String key = child.key();
+		Node existing = register.putIfAbsent(key, child);
+		if (existing != null) { node.targets[node.arcs - 1] = existing; }
+	}
+
+	/**
+	 * State of the automaton while it is built.
+	 */
+	private static final class Node {
+		private final int id; //stable identity for register keys
+		private char[] labels = new char[2];
+		private Node[] targets = new Node[2];
+		private int arcs;
+		private boolean accepting;
+		private int words = -1;
+
+		private Node(int id) {
+			this.id = id;
+		}
+
+		private Node last() { return targets[arcs - 1]; }
+
+		private Node add(char label, int id) {
+			if (arcs == labels.length) {
+				labels = Arrays.copyOf(labels, arcs * 2);
+				targets = Arrays.copyOf(targets, arcs * 2);
+			}
+			labels[arcs] = label;
+			Node n = new Node(id);
+			targets[arcs++] = n;
+			return n;
+		}
+
+		/**
+		 * @return  a key equal for states accepting the same tags, valid once every target is registered
+		 */
+		private String key() {
+			StringBuilder b = new StringBuilder().append(accepting ? '1' : '0');
+			for (int a = 0; a < arcs; a++) { b.append(labels[a]).append(targets[a].id).append(','); }
+			return b.toString();
+		}
+
+		private int words() {
+			if (words == -1) {
+				words = accepting ? 1 : 0;
+				for (int a = 0; a < arcs; a++) { words += targets[a].words(); }
+			}
+			return words;
+		}
+	}
+}
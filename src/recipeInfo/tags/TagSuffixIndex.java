@@ -0,0 +1,207 @@
+package recipeInfo.tags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Substring index over every known tag, so a tag can be found from any part of it rather than just its start.
+ * Tags are joined into one text, split by a separator, and a suffix array of the text is built by prefix doubling.
+ * The suffixes starting with a query sit in one block of the array, found by two binary searches in O(m log n),
+ * and each suffix maps back to its tag by a search of where each tag starts.
+ * Building is done on a background thread. Tags added since the last build are kept in a short list which is
+ * scanned directly, and once that list grows past a fraction of the index the index is rebuilt.
+ */
+public class TagSuffixIndex {
+	private static final char SEPARATOR = '\0';
+	private static final int MIN_REBUILD = 64; //tags added before a rebuild is worth it
+
+	private final ExecutorService builder;
+	private final ArrayList<String> tags = new ArrayList<>();
+	private volatile Built built = new Built(new String[0]);
+	private boolean building;
+
+	public TagSuffixIndex() {
+		builder = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "tag-index");
+			t.setDaemon(true); //never hold the program open
+			return t;
+		});
+	}
+
+	/**
+	 * Add a new tag, starting a rebuild in the background once enough tags are waiting.
+	 * @param tag   Tag to add, must not already be in the index
+	 */
+	public synchronized void add(String tag) {
+		tags.add(tag);
+		int waiting = tags.size() - built.tags.length;
+		if (!building && waiting >= Math.max(MIN_REBUILD, built.tags.length / 8)) {
+			building = true;
+			String[] all = tags.toArray(new String[0]);
+			builder.execute(() -> {
+				Built next = new Built(all);
+				synchronized (this) {
+					built = next;
+					building = false;
+				}
+			});
+		}
+	}
+
+	public synchronized int size() { return tags.size(); }
+
+	/**
+	 * Find tags containing some text.
+	 * @param text  Text to look for
+	 * @param limit Max number of tags wanted
+	 * @return  up to limit tags containing the text
+	 */
+	public List<String> search(String text, int limit) {
+		if (text.isEmpty() || text.indexOf(SEPARATOR) != -1 || limit <= 0) { return List.of(); }
+		Built b;
+		List<String> waiting;
+		synchronized (this) {
+			b = built;
+			waiting = new ArrayList<>(tags.subList(b.tags.length, tags.size()));
+		}
+		Set<String> found = new LinkedHashSet<>();
+		b.search(text, limit, found);
+		for (int i = 0; i < waiting.size() && found.size() < limit; i++) {
+			if (waiting.get(i).contains(text)) { found.add(waiting.get(i)); }
+		}
+		return new ArrayList<>(found);
+	}
+
+	/**
+	 * Suffix array over a fixed set of tags.
+	 */
+	private static final class Built {
+		private final String[] tags;
+		private final int[] starts; //position in the text of each tag
+		private final char[] text;
+		private final int[] suffixes;
+
+		private Built(String[] tags) {
+			this.tags = tags;
+			starts = new int[tags.length];
+			int length = 0;
+			for (String tag : tags) { length += tag.length() + 1; }
+			text = new char[length];
+			int pos = 0;
+			for (int i = 0; i < tags.length; i++) {
+				starts[i] = pos;
+				tags[i].getChars(0, tags[i].length(), text, pos);
+				pos += tags[i].length();
+				text[pos++] = SEPARATOR;
+			}
+			suffixes = buildSuffixArray(text);
+		}
+
+		private void search(String query, int limit, Set<String> found) {
+			int from = bound(query, false);
+			int to = bound(query, true);
+			for (int i = from; i < to && found.size() < limit; i++) {
+				int tag = Arrays.binarySearch(starts, suffixes[i]);
+				if (tag < 0) { tag = -tag - 2; } //the tag starting at or before the suffix
+				found.add(tags[tag]);
+			}
+		}
+
+		/**
+		 * Binary search for the edge of the block of suffixes starting with the query.
+		 * @param query Text the suffixes should start with
+		 * @param after false for the first suffix in the block, true for the first one after it
+		 * @return  index into the suffix array
+		 */
+		private int bound(String query, boolean after) {
+			int lo = 0;
+			int hi = suffixes.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				int c = comparePrefix(suffixes[mid], query);
+				if (c < 0 || (after && c == 0)) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * Compare a suffix against the query, treating a suffix which starts with the query as equal.
+		 */
+		private int comparePrefix(int suffix, String query) {
+			for (int i = 0; i < query.length(); i++) {
+				if (suffix + i == text.length) { return -1; }
+				int c = text[suffix + i] - query.charAt(i);
+				if (c != 0) { return c; }
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Build a suffix array by prefix doubling.
+	 * Each round sorts the suffixes by their first 2k characters, using the ranks of their first k characters
+	 * from the round before as a pair of keys, so there are at most log n rounds of two counting sorts.
+	 * @param text  Text to index
+	 * @return  start positions of the suffixes of the text in sorted order
+	 */
+	static int[] buildSuffixArray(char[] text) {
+		int n = text.length;
+		int[] sa = new int[n];
+		int[] rank = new int[n];
+		int[] next = new int[n];
+		if (n == 0) { return sa; }
+
+		//first round, sort by the first character alone
+		int alphabet = 0;
+		for (char c : text) { alphabet = Math.max(alphabet, c + 1); }
+		int[] count = new int[Math.max(alphabet, n) + 1];
+		for (char c : text) { count[c + 1]++; }
+		for (int i = 1; i <= alphabet; i++) { count[i] += count[i - 1]; }
+		for (int i = 0; i < n; i++) { sa[count[text[i]]++] = i; }
+		int classes = 0;
+		for (int i = 0; i < n; i++) {
+			if (i > 0 && text[sa[i]] != text[sa[i - 1]]) { classes++; }
+			rank[sa[i]] = classes;
+		}
+		classes++;
+
+		for (int k = 1; classes < n; k <<= 1) {
+			//order by the second key: suffixes too short to have one come first, then the rest in current order
+			int p = 0;
+			for (int i = n - k; i < n; i++) { next[p++] = i; }
+			for (int i = 0; i < n; i++) {
+				if (sa[i] >= k) { next[p++] = sa[i] - k; }
+			}
+			//stable counting sort by the first key
+			Arrays.fill(count, 0, classes + 1, 0);
+			for (int i = 0; i < n; i++) { count[rank[i] + 1]++; }
+			for (int i = 1; i <= classes; i++) { count[i] += count[i - 1]; }
+			for (int i = 0; i < n; i++) { sa[count[rank[next[i]]]++] = next[i]; }
+
+			//re-rank by the pair of keys, reusing next for the new ranks
+			next[sa[0]] = 0;
+			classes = 1;
+			for (int i = 1; i < n; i++) {
+				int a = sa[i - 1];
+				int b = sa[i];
+				boolean same = rank[a] == rank[b]
+						&& (a + k < n ? rank[a + k] : -1) == (b + k < n ? rank[b + k] : -1);
+				if (!same) { classes++; }
+				next[b] = classes - 1;
+			}
+			int[] t = rank;
+			rank = next;
+			next = t;
+		}
+		return sa;
+	}
+}
@@ -0,0 +1,344 @@
+package recipeInfo.tags;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Compressed trie of every known tag, used for autocompleting tags.
+ * Tags are given ids in the order they are added. One array holds every id sorted by tag, and each node covers a
+ * contiguous range of it, so the tags under a prefix are found with a single walk down the trie and returned as a
+ * view over that range. The sorted array is rebuilt the first time the trie is searched after new tags are added.
+ * The trie also counts how many recipes use each tag, and every node keeps its top k tags by use so the best
+ * suggestions for a prefix cost no more than the walk to it. Prefixes can also be matched fuzzily, by walking the
+ * trie alongside a Levenshtein automaton for the prefix and stopping wherever it can no longer accept.
+ * The public methods are synchronized, so suggestions can be looked up off the event thread while tags are added.
+ */
+public class TagTrie {
+	private final TagTrieNode root = new TagTrieNode(new char[0], -1);
+	private final int topK;
+	private String[] tags = new String[16];
+	private int[] uses = new int[16];
+	private int size;
+	private int[] sortedIds = new int[0];
+	private boolean dirty;
+
+	public TagTrie() {
+		this(10);
+	}
+
+	/**
+	 * @param topK  Number of most used tags each node keeps for suggestions
+	 */
+	public TagTrie(int topK) {
+		this.topK = topK;
+	}
+
+	/**
+	 * Add a tag to the trie, without counting a use of it.
+	 * @param tag   Tag to add
+	 * @return  true if the tag was new
+	 */
+	public synchronized boolean insert(String tag) {
+		return insert(tag, 0);
+	}
+
+	/**
+	 * Count a recipe using a tag, adding the tag if it is new, and update the top tags on its path.
+	 * @param tag   Tag which was used
+	 * @return  true if the tag was new
+	 */
+	public synchronized boolean addUse(String tag) {
+		return insert(tag, 1);
+	}
+
+	/**
+	 * Count several recipes using a tag at once, adding the tag if it is new.
+	 * @param tag   Tag which was used
+	 * @param addedUses Number of recipes using it
+	 * @return  true if the tag was new
+	 */
+	public synchronized boolean addUses(String tag, int addedUses) {
+		return insert(tag, addedUses);
+	}
+
+	private boolean insert(String tag, int addedUses) {
+		TagTrieNode[] path = new TagTrieNode[tag.length() + 1];
+		int depth = 0;
+		path[depth++] = root;
+		TagTrieNode node = root;
+		int i = 0;
+		while (i < tag.length()) {
+			TagTrieNode child = node.getChild(tag.charAt(i));
+			if (child == null) {
+				child = new TagTrieNode(tag.substring(i).toCharArray(), size);
+				node.addChild(child);
+				path[depth++] = child;
+				addTag(tag);
+				countUses(size - 1, addedUses, path, depth);
+				return true;
+			}
+			char[] label = child.getLabel();
+			int matched = 0;
+			while (matched < label.length && i < tag.length() && label[matched] == tag.charAt(i)) {
+				matched++;
+				i++;
+			}
+			if (matched < label.length) { child.split(matched); } //tag leaves or ends partway along the edge
+			node = child;
+			path[depth++] = node;
+		}
+		boolean isNew = node.getTagId() == -1;
+		if (isNew) {
+			node.setTagId(size);
+			addTag(tag);
+		}
+		countUses(node.getTagId(), addedUses, path, depth);
+		return isNew;
+	}
+
+	private void addTag(String tag) {
+		if (size == tags.length) {
+			tags = Arrays.copyOf(tags, size * 2);
+			uses = Arrays.copyOf(uses, size * 2);
+		}
+		tags[size++] = tag;
+		dirty = true;
+	}
+
+	/**
+	 * Add to a tag's use count and move it up the top lists of the nodes on its path.
+	 * Counts only ever go up, so a tag can only enter or climb a list, never push another tag out of order.
+	 * @param id    Id of the tag
+	 * @param addedUses Number of uses to add
+	 * @param path  Nodes from the root down to the tag's node
+	 * @param depth Number of nodes in path
+	 */
+	private void countUses(int id, int addedUses, TagTrieNode[] path, int depth) {
+		if (addedUses == 0) { return; }
+		uses[id] += addedUses;
+		for (int d = 0; d < depth; d++) {
+			TagTrieNode node = path[d];
+			int[] top = node.getTop();
+			int n = node.getTopSize();
+			int pos = 0;
+			while (pos < n && top[pos] != id) { pos++; }
+			if (pos == n) { //not listed yet
+				if (n == topK && !ranksBefore(id, top[n - 1])) { continue; }
+				if (n < topK) {
+					if (n == top.length) { top = Arrays.copyOf(top, Math.min(topK, Math.max(2, n * 2))); }
+					n++;
+				}
+				pos = n - 1;
+			}
+			while (pos > 0 && ranksBefore(id, top[pos - 1])) {
+				top[pos] = top[pos - 1];
+				pos--;
+			}
+			top[pos] = id;
+			node.setTop(top, n);
+		}
+	}
+
+	/**
+	 * Order for suggestions, most used first, then alphabetical.
+	 */
+	private boolean ranksBefore(int a, int b) {
+		return uses[a] != uses[b] ? uses[a] > uses[b] : tags[a].compareTo(tags[b]) < 0;
+	}
+
+	public synchronized int size() { return size; }
+
+	/**
+	 * @param tag   Tag to look up
+	 * @return  number of uses counted for the tag, 0 if it isn't in the trie
+	 */
+	public synchronized int getUses(String tag) {
+		TagTrieNode node = find(tag);
+		if (node == null || node.getTagId() == -1 || !tags[node.getTagId()].equals(tag)) { return 0; }
+		return uses[node.getTagId()];
+	}
+
+	/**
+	 * Call an action for every tag and its number of uses, in the order they were added.
+	 * @param action    Given each tag and its uses
+	 */
+	public synchronized void forEach(ObjIntConsumer<String> action) {
+		for (int id = 0; id < size; id++) { action.accept(tags[id], uses[id]); }
+	}
+
+	/**
+	 * Get the most used tags starting with a prefix.
+	 * @param prefix    Prefix to search for
+	 * @param limit Max number of tags wanted, at most the trie's top k
+	 * @return  up to limit tags, most used first
+	 */
+	public synchronized List<String> suggest(String prefix, int limit) {
+		TagTrieNode node = find(prefix);
+		if (node == null) { return List.of(); }
+		int n = Math.min(limit, node.getTopSize());
+		String[] best = new String[n];
+		for (int i = 0; i < n; i++) { best[i] = tags[node.getTop()[i]]; }
+		return Arrays.asList(best);
+	}
+
+	/**
+	 * Get the most used tags starting with a prefix, or with something within a few edits of it, so typos still
+	 * find their tags. Tags are ranked by how many edits their best match needed, then by use, so exact matches
+	 * always come first.
+	 * @param prefix    Prefix to search for
+	 * @param maxEdits  Max number of characters inserted, deleted or changed
+	 * @param limit Max number of tags wanted, at most the trie's top k
+	 * @return  up to limit tags, best first
+	 */
+	public synchronized List<String> suggestFuzzy(String prefix, int maxEdits, int limit) {
+		if (maxEdits == 0) { return suggest(prefix, limit); }
+		char[] query = prefix.toCharArray();
+		int[] row = new int[query.length + 1];
+		for (int j = 0; j < row.length; j++) { row[j] = j; } //the empty path is j deletions from the query
+		HashMap<Integer, Integer> edits = new HashMap<>(); //tag id to fewest edits it matched with
+		if (row[query.length] <= maxEdits) { collectTop(root, row[query.length], edits); }
+		for (int i = 0; i < root.getChildCount(); i++) { walkFuzzy(root.getChildAt(i), query, row, maxEdits, edits); }
+
+		List<Map.Entry<Integer, Integer>> found = new ArrayList<>(edits.entrySet());
+		found.sort((a, b) -> !a.getValue().equals(b.getValue())
+				? a.getValue() - b.getValue()
+				: ranksBefore(a.getKey(), b.getKey()) ? -1 : 1);
+		int n = Math.min(limit, found.size());
+		String[] best = new String[n];
+		for (int i = 0; i < n; i++) { best[i] = tags[found.get(i).getKey()]; }
+		return Arrays.asList(best);
+	}
+
+	/**
+	 * Step the automaton through a node's label, collecting the node's top tags if the path so far is within
+	 * range of the whole query, and carry on into the children while any state is still alive.
+	 * A node's top k are enough: any tag beneath it that missed the list is outranked by k tags matching at least
+	 * as well.
+	 * @param node  Node to walk
+	 * @param query Prefix being matched
+	 * @param row   Edit distances from the path above this node to each prefix of the query
+	 * @param maxEdits  Max edits allowed
+	 * @param edits Tag ids found so far, with the fewest edits they matched with
+	 */
+	private void walkFuzzy(TagTrieNode node, char[] query, int[] row, int maxEdits, Map<Integer, Integer> edits) {
+		int best = Integer.MAX_VALUE; //fewest edits for the whole query anywhere along this label
+		for (char c : node.getLabel()) {
+			int[] next = new int[row.length];
+			next[0] = row[0] + 1;
+			int min = next[0];
+			for (int j = 1; j < row.length; j++) {
+				int substitute = row[j - 1] + (query[j - 1] == c ? 0 : 1);
+				next[j] = Math.min(substitute, Math.min(row[j], next[j - 1]) + 1);
+				min = Math.min(min, next[j]);
+			}
+			row = next;
+			best = Math.min(best, row[query.length]);
+			if (min > maxEdits) { break; } //no state alive, nothing further down can match
+		}
+		if (best <= maxEdits) { collectTop(node, best, edits); }
+		int min = Integer.MAX_VALUE;
+		for (int v : row) { min = Math.min(min, v); }
+		if (min > maxEdits) { return; }
+		for (int i = 0; i < node.getChildCount(); i++) { walkFuzzy(node.getChildAt(i), query, row, maxEdits, edits); }
+	}
+
+	private void collectTop(TagTrieNode node, int cost, Map<Integer, Integer> edits) {
+		for (int i = 0; i < node.getTopSize(); i++) { edits.merge(node.getTop()[i], cost, Math::min); }
+	}
+
+	/**
+	 * Find every tag starting with a prefix.
+	 * @param prefix    Prefix to search for, an empty prefix matches every tag
+	 * @return  a read only view of the matching tags in sorted order, empty if there are none
+	 */
+	public synchronized List<String> search(String prefix) {
+		if (dirty) { rebuildRanges(); }
+		TagTrieNode node = find(prefix);
+		if (node == null) { return List.of(); }
+		return new TagView(tags, sortedIds, node.getRangeStart(), node.getRangeEnd());
+	}
+
+	/**
+	 * Walk down the trie to the highest node covering every tag with a prefix.
+	 * @param prefix    Prefix to search for
+	 * @return  the node, or null if no tag has the prefix
+	 */
+	TagTrieNode find(String prefix) {
+		TagTrieNode node = root;
+		int i = 0;
+		while (i < prefix.length()) {
+			node = node.getChild(prefix.charAt(i));
+			if (node == null) { return null; }
+			char[] label = node.getLabel();
+			for (int j = 0; j < label.length && i < prefix.length(); j++, i++) {
+				if (label[j] != prefix.charAt(i)) { return null; }
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Lay out every tag id in sorted order and record each node's range of it.
+	 * A pre-order walk visiting children in character order meets the tags in sorted order, and a node's range
+	 * closes once all of its children have been walked.
+	 */
+	private void rebuildRanges() {
+		int[] ids = new int[size];
+		int next = 0;
+		TagTrieNode[] path = new TagTrieNode[8];
+		int[] nextChild = new int[8];
+		int depth = 0;
+		path[0] = root;
+		root.setRange(0, 0);
+		while (depth >= 0) {
+			TagTrieNode node = path[depth];
+			if (nextChild[depth] == 0 && node.getTagId() != -1) { ids[next++] = node.getTagId(); }
+			if (nextChild[depth] < node.getChildCount()) {
+				TagTrieNode child = node.getChildAt(nextChild[depth]++);
+				if (++depth == path.length) {
+					path = Arrays.copyOf(path, depth * 2);
+					nextChild = Arrays.copyOf(nextChild, depth * 2);
+				}
+				path[depth] = child;
+				nextChild[depth] = 0;
+				child.setRange(next, next);
+			} else {
+				node.setRange(node.getRangeStart(), next);
+				depth--;
+			}
+		}
+		sortedIds = ids;
+		dirty = false;
+	}
+
+	/**
+	 * Read only list of tags over a range of a sorted id array.
+	 */
+	private static class TagView extends AbstractList<String> {
+		private final String[] tags;
+		private final int[] sortedIds;
+		private final int start;
+		private final int end;
+
+		private TagView(String[] tags, int[] sortedIds, int start, int end) {
+			this.tags = tags;
+			this.sortedIds = sortedIds;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public String get(int index) {
+			if (index < 0 || index >= end - start) { throw new IndexOutOfBoundsException(index); }
+			return tags[sortedIds[start + index]];
+		}
+
+		@Override
+		public int size() { return end - start; }
+	}
+}
@@ -1,35 +1,117 @@
 package recipeInfo.tags;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 
 /**
- * Node element for the Trie involved in autocompleting tags.
- * Has the character represented by the node, all nodes beneath, and all tags connected to this node.
+ * Node element for the compressed (radix) trie involved in autocompleting tags.
+ * Each node holds the run of characters on the edge leading to it, so chains of single children are merged into one
+ * node. Children are kept in primitive arrays sorted by their first character. Instead of storing its own set of
+ * tags, a node knows the range of the trie's sorted tag id array covering every tag beneath it, along with a short
+ * list of the ids of the most used tags beneath it.
  */
 public class TagTrieNode {
-	private final char character;
+	private char[] label;
 
-	private final HashMap<Character, TagTrieNode> children;
-	private final HashSet<String> tags;
+	private char[] childKeys;
+	private TagTrieNode[] children;
+	private int childCount;
 
-	public TagTrieNode(char character) {
-		this.character = character;
-		children = new HashMap<>();
-		tags = new HashSet<>();
+	private int tagId; //id of the tag ending at this node, -1 if none
+	private int rangeStart;
+	private int rangeEnd;
+
+	private int[] top; //ids of the most used tags beneath, most used first
+	private int topSize;
+
+	public TagTrieNode(char[] label, int tagId) {
+		this.label = label;
+		this.tagId = tagId;
+		childKeys = new char[0];
+		children = new TagTrieNode[0];
+		top = new int[0];
+	}
+
+	public char[] getLabel() { return label; }
+
+	public int getTagId() { return tagId; }
+
+	public void setTagId(int tagId) { this.tagId = tagId; }
+
+	public int getChildCount() { return childCount; }
+
+	public TagTrieNode getChildAt(int index) { return children[index]; }
+
+	/**
+	 * Find the child whose label starts with a character.
+	 * @param c Character to look for
+	 * @return  the child, or null if there isn't one
+	 */
+	public TagTrieNode getChild(char c) {
+		int index = Arrays.binarySearch(childKeys, 0, childCount, c);
+		return index < 0 ? null : children[index];
+	}
+
+	/**
+	 * Add a child, keeping children sorted. Replaces any child starting with the same character.
+	 * @param child Child to add
+	 */
+	public void addChild(TagTrieNode child) {
+		char c = child.label[0];
+		int index = Arrays.binarySearch(childKeys, 0, childCount, c);
+		if (index >= 0) {
+			children[index] = child;
+			return;
+		}
+		index = -index - 1;
+		if (childCount == childKeys.length) {
+			int size = Math.max(2, childCount * 2);
+			childKeys = Arrays.copyOf(childKeys, size);
+			children = Arrays.copyOf(children, size);
+		}
+		System.arraycopy(childKeys, index, childKeys, index + 1, childCount - index);
+		System.arraycopy(children, index, children, index + 1, childCount - index);
+		childKeys[index] = c;
+		children[index] = child;
+		childCount++;
 	}
 
-	public void addTag(String tag) {
-		this.tags.add(tag);
+	/**
+	 * Split this node's label, moving everything below into a new child.
+	 * @param at    Number of label characters to keep on this node
+	 */
+	public void split(int at) {
+		TagTrieNode lower = new TagTrieNode(Arrays.copyOfRange(label, at, label.length), tagId);
+		lower.childKeys = childKeys;
+		lower.children = children;
+		lower.childCount = childCount;
+		lower.top = top.clone(); //the lower node covers exactly the same tags
+		lower.topSize = topSize;
+		label = Arrays.copyOf(label, at);
+		tagId = -1;
+		childKeys = new char[0];
+		children = new TagTrieNode[0];
+		childCount = 0;
+		addChild(lower);
 	}
 
-	public void addChild(Character key, TagTrieNode value) { children.put(key, value); }
+	public int getRangeStart() { return rangeStart; }
 
-	public HashMap<Character, TagTrieNode> getChildren() {
-		return children;
+	public int getRangeEnd() { return rangeEnd; }
+
+	public void setRange(int start, int end) {
+		rangeStart = start;
+		rangeEnd = end;
 	}
 
-	public HashSet<String> getTags() {
-		return tags;
+	/**
+	 * @return  ids of the most used tags beneath this node, most used first, only the first getTopSize() are valid
+	 */
+	public int[] getTop() { return top; }
+
+	public int getTopSize() { return topSize; }
+
+	public void setTop(int[] top, int topSize) {
+		this.top = top;
+		this.topSize = topSize;
 	}
 }